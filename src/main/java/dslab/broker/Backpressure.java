@@ -0,0 +1,37 @@
+package dslab.broker;
+
+/**
+ * Holds back a connection whose thread must not block, i.e. one served by an {@link EventLoop} together with many
+ * others. While such a connection's input is handled, it is the thread's {@link #current() current} backpressure,
+ * and a full queue pauses reading from it instead of waiting, see {@link BoundedMessageBuffer}.
+ */
+interface Backpressure {
+
+    /**
+     * Stops handling input from the connection until the returned task was run, from any thread, or the timeout
+     * passed. Input that was already read is kept until then. Pausing a paused connection returns the same task.
+     */
+    Runnable pause(long timeoutNanos);
+
+    /**
+     * Returns the backpressure of the connection whose input the calling thread handles, or {@code null} if the
+     * thread may simply block.
+     */
+    static Backpressure current() {
+        return Holder.CURRENT.get();
+    }
+
+    static void setCurrent(Backpressure backpressure) {
+        if (backpressure == null)
+            Holder.CURRENT.remove();
+        else
+            Holder.CURRENT.set(backpressure);
+    }
+
+    final class Holder {
+        private static final ThreadLocal<Backpressure> CURRENT = new ThreadLocal<>();
+
+        private Holder() {
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package dslab.broker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of messages and payload bytes held by another buffer, applying the queue's
+ * {@link OverflowPolicy} to publishes that do not fit.
+ * <p>
+ * Only messages waiting in the buffer count; a message is released once a consumer took it, or once it expired if
+ * the wrapped buffer reports that, see {@link #releaseExpired(Message)}. Messages handed back by consumers are always
+ * accepted, even if that exceeds the limits for a while.
+ * <p>
+ * Rejected messages are counted per publishing thread, so the publisher can tell whether a publish that went
+ * through an exchange was rejected by any of the queues it was routed to, see {@link #threadRejections()}.
+ * <p>
+ * {@link OverflowPolicy#BLOCK_PUBLISH} waits on the publishing thread only if it may block. An event loop thread
+ * serves many connections, so there the message is taken beyond the limits instead and the publishing connection
+ * stops reading, through its {@link Backpressure}, until the queue has room again or the block timeout passed.
+ */
+class BoundedMessageBuffer implements MessageBuffer {
+
+    private static final ThreadLocal<long[]> REJECTIONS = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final MessageBuffer messages;
+    private final long maxLength;
+    private final long maxBytes;
+    private final OverflowPolicy overflow;
+    private final long blockTimeoutNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = this.lock.newCondition();
+    // resume tasks of connections paused until there is room, guarded by lock
+    private final List<Runnable> paused = new ArrayList<>();
+    private long length;
+    private long bytes;
+
+    BoundedMessageBuffer(MessageBuffer messages, QueueOptions options) {
+        this.messages = messages;
+        this.maxLength = options.maxLength();
+        this.maxBytes = options.maxBytes();
+        this.overflow = options.overflow();
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(options.blockTimeoutMillis());
+    }
+
+    /**
+     * Returns how many messages published by the calling thread were rejected so far. The count only grows, so
+     * comparing the values before and after a publish tells whether it was rejected anywhere.
+     */
+    static long threadRejections() {
+        return REJECTIONS.get()[0];
+    }
+
+    /**
+     * Counts messages published by the calling thread that a buffer without room rejected, e.g. a full ring.
+     */
+    static void countRejections(int count) {
+        REJECTIONS.get()[0] += count;
+    }
+
+    @Override
+    public void put(Message message) {
+        if (!this.admit(message)) {
+            countRejections(1);
+            return;
+        }
+        long rejections = threadRejections();
+        this.messages.put(message);
+        // the wrapped buffer may have no room even though the limits allowed the message
+        if (threadRejections() != rejections)
+            this.release(message);
+        this.dropOverflow();
+    }
+
+    @Override
+    public void putAll(List<Message> messages) {
+        List<Message> admitted = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            if (this.admit(message))
+                admitted.add(message);
+            else
+                countRejections(1);
+        }
+        long rejections = threadRejections();
+        this.messages.putAll(admitted);
+        // a wrapped buffer without room rejects the end of the batch
+        int stored = admitted.size() - (int) (threadRejections() - rejections);
+        for (Message message : admitted.subList(stored, admitted.size()))
+            this.release(message);
+        this.dropOverflow();
+    }
+
+    @Override
+    public void requeue(List<Message> messages) {
+        this.lock.lock();
+        try {
+            for (Message message : messages)
+                this.count(message, 1);
+        } finally {
+            this.lock.unlock();
+        }
+        this.messages.requeue(messages);
+    }
+
+    /**
+     * Counts the message if it fits, or if the policy makes room afterwards.
+     */
+    private boolean admit(Message message) {
+        long size = message.size();
+        this.lock.lock();
+        try {
+            if (this.overflow == OverflowPolicy.BLOCK_PUBLISH && !this.fits(size)) {
+                Backpressure backpressure = Backpressure.current();
+                if (backpressure != null && this.blockTimeoutNanos > 0) {
+                    Runnable resume = backpressure.pause(this.blockTimeoutNanos);
+                    if (!this.paused.contains(resume))
+                        this.paused.add(resume);
+                    this.count(message, 1);
+                    return true;
+                }
+
+                long remaining = this.blockTimeoutNanos;
+                while (!this.fits(size) && remaining > 0)
+                    remaining = this.released.awaitNanos(remaining);
+            }
+            if (this.overflow != OverflowPolicy.DROP_HEAD && !this.fits(size))
+                return false;
+
+            this.count(message, 1);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private boolean fits(long size) {
+        return (this.maxLength <= 0 || this.length + 1 <= this.maxLength)
+                && (this.maxBytes <= 0 || this.bytes + size <= this.maxBytes);
+    }
+
+    /**
+     * Discards the oldest messages while the limits are exceeded; messages already taken by consumers are out of
+     * reach, so the buffer may stay above its limits until they were released.
+     */
+    private void dropOverflow() {
+        if (this.overflow != OverflowPolicy.DROP_HEAD)
+            return;
+        while (this.exceeded()) {
+            Message dropped = this.messages.poll();
+            if (dropped == null)
+                return;
+            this.release(dropped);
+        }
+    }
+
+    private boolean exceeded() {
+        this.lock.lock();
+        try {
+            return (this.maxLength > 0 && this.length > this.maxLength)
+                    || (this.maxBytes > 0 && this.bytes > this.maxBytes);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public Message take() throws InterruptedException {
+        return this.release(this.messages.take());
+    }
+
+    @Override
+    public Message poll() {
+        return this.release(this.messages.poll());
+    }
+
+    @Override
+    public Message poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.release(this.messages.poll(timeout, unit));
+    }
+
+    /**
+     * Releases a message that expired while waiting in the wrapped buffer, which will not return it anymore.
+     */
+    void releaseExpired(Message message) {
+        this.release(message);
+    }
+
+    private Message release(Message message) {
+        if (message == null)
+            return null;
+
+        List<Runnable> resumed = List.of();
+        this.lock.lock();
+        try {
+            this.count(message, -1);
+            this.released.signalAll();
+            if (!this.paused.isEmpty() && this.fits(0))
+                resumed = this.takePaused();
+        } finally {
+            this.lock.unlock();
+        }
+        resumed.forEach(Runnable::run);
+        return message;
+    }
+
+    private List<Runnable> takePaused() {
+        List<Runnable> resumed = List.copyOf(this.paused);
+        this.paused.clear();
+        return resumed;
+    }
+
+    private void count(Message message, int sign) {
+        this.length += sign;
+        this.bytes += sign * message.size();
+    }
+
+    @Override
+    public void close() {
+        this.messages.close();
+    }
+
+    /**
+     * Also resumes the connections paused by the queue, nothing makes room in a deleted queue anymore.
+     */
+    @Override
+    public void delete() {
+        List<Runnable> resumed;
+        this.lock.lock();
+        try {
+            resumed = this.takePaused();
+        } finally {
+            this.lock.unlock();
+        }
+        resumed.forEach(Runnable::run);
+        this.messages.delete();
+    }
+}
@@ -5,17 +5,23 @@ import java.io.BufferedWriter;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 import dslab.ComponentFactory;
 import dslab.config.BrokerConfig;
+import dslab.config.Durability;
 
 public class Broker implements IBroker {
 
@@ -24,6 +30,9 @@ public class Broker implements IBroker {
     private final int port;
 
     private ServerSocket serverSocket;
+    private ServerSocketChannel serverChannel;
+    private final EventLoop[] eventLoops;
+    private int nextEventLoop;
 
     private final String domain;
     private final String dnsHost;
@@ -31,9 +40,13 @@ public class Broker implements IBroker {
 
     private final Map<String, Exchange> exchanges;
     private final Map<String, NamedQueue> queues;
-    private final Exchange defaultExchange;
+    private final DefaultExchange defaultExchange;
 
-    private final ExecutorService clientHandlerPool = Executors.newCachedThreadPool(); // Directly initialize here
+    private final ExecutorService clientHandlerPool;
+    private final GroupCommitter committer;
+    private final TopologyStore topology;
+    private final TimerWheel timers;
+    private final BrokerContext context;
 
     private volatile boolean running;
 
@@ -48,23 +61,96 @@ public class Broker implements IBroker {
         this.queues = new ConcurrentHashMap<>();
         this.exchanges = new ConcurrentHashMap<>();
         this.defaultExchange = new DefaultExchange("default");
+        this.clientHandlerPool = config.threading().newPerTaskExecutor(this.componentId + "-client-");
+        this.committer = new GroupCommitter(config.durability(),
+                TimeUnit.MICROSECONDS.toNanos(config.commitIntervalMicros()), config.commitBatchBytes(),
+                Thread.ofPlatform().name(this.componentId + "-commit").factory());
+        this.timers = new TimerWheel(TimerWheel.DEFAULT_TICK_NANOS, TimerWheel.DEFAULT_WHEEL_SIZE,
+                Thread.ofPlatform().name(this.componentId + "-timer").factory());
+        QueueFactory queueFactory = new QueueFactory(config, this.committer, this.timers);
 
         this.exchanges.putIfAbsent("default", this.defaultExchange);
+        this.topology = config.persistTopology() ? this.loadTopology(config, queueFactory) : TopologyStore.disabled();
+        QueueReaper reaper = new QueueReaper(this.queues, this.exchanges, this.topology, this.timers);
+        this.queues.values().forEach(reaper::watch);
+        this.context = new BrokerContext(this.exchanges, this.queues, this.defaultExchange,
+                new SubscriptionSettings(
+                        config.threading().threadFactory(this.componentId + "-subscription-"),
+                        Math.max(1, config.pushBatchSize()), TimeUnit.MICROSECONDS.toNanos(config.pushLingerMicros())),
+                queueFactory,
+                this.committer,
+                this.topology,
+                this.timers,
+                reaper);
+
+        this.eventLoops = config.usesNioTransport() ? new EventLoop[Math.max(1, config.ioThreads())] : null;
         try {
-            this.serverSocket = new ServerSocket(port);
+            if (this.eventLoops != null) {
+                this.serverChannel = ServerSocketChannel.open();
+                this.serverChannel.bind(new InetSocketAddress(port));
+                this.serverSocket = this.serverChannel.socket();
+            } else {
+                this.serverSocket = new ServerSocket(port);
+            }
         } catch (IOException e) {
             System.err.println("Error: Unable to start broker:" + e.getCause() + ", " + e.getMessage());
         }
     }
 
+    /**
+     * @throws IllegalStateException if the stored topology cannot be restored, the broker must not start then
+     */
+    private TopologyStore loadTopology(BrokerConfig config, QueueFactory queueFactory) {
+        Path directory = Path.of(config.dataDir(), this.componentId, "topology");
+        try {
+            return TopologyStore.open(directory, config.durability() == Durability.FSYNC, new TopologyStore.Loader() {
+                @Override
+                public void exchange(String type, String name) {
+                    Broker.this.exchanges.computeIfAbsent(name, n -> Exchange.of(type, n));
+                }
+
+                @Override
+                public void queue(String name, QueueOptions options) {
+                    try {
+                        NamedQueue queue =
+                                Broker.this.queues.computeIfAbsent(name, n -> queueFactory.create(n, options));
+                        Broker.this.defaultExchange.bind(queue, name);
+                    } catch (UncheckedIOException e) {
+                        System.err.println("Error: Unable to restore queue " + name + ": " + e.getMessage());
+                    }
+                }
+
+                @Override
+                public void binding(String exchange, String queue, String key) {
+                    Exchange target = Broker.this.exchanges.get(exchange);
+                    NamedQueue source = Broker.this.queues.get(queue);
+                    if (target != null && source != null)
+                        target.bind(source, key);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            // running on without the stored topology would drop it, or silently stop persisting declarations
+            this.queues.values().forEach(NamedQueue::close);
+            throw new IllegalStateException("unable to restore topology from " + directory, e);
+        }
+    }
+
     @Override
     public void run() {
         System.out.println("Broker is running. Listening for clients on port " + port);
         this.registerWithDNS();
+        this.committer.start();
+        this.timers.start();
+
+        if (this.eventLoops != null) {
+            this.runEventLoops();
+            return;
+        }
+
         Stream.generate(this::tryAcceptClient)
                 .takeWhile(clientSocket -> this.running)
                 .forEach(clientSocket -> clientSocket.ifPresent(socket -> {
-                    this.clientHandlerPool.submit(new BrokerClientHandler(socket, this.exchanges, this.queues, this.defaultExchange));
+                    this.clientHandlerPool.submit(new BrokerClientHandler(socket, this.context));
                 }));
     }
 
@@ -77,11 +163,54 @@ public class Broker implements IBroker {
         }
     }
 
+    private void runEventLoops() {
+        for (int i = 0; i < this.eventLoops.length; i++) {
+            try {
+                this.eventLoops[i] = new EventLoop(channel -> new BrokerClientHandler(channel, this.context));
+            } catch (IOException e) {
+                System.err.println("Error: Unable to open selector: " + e.getMessage());
+                return;
+            }
+            new Thread(this.eventLoops[i], "%s-event-loop-%d".formatted(this.componentId, i)).start();
+        }
+
+        Stream.generate(this::tryAcceptChannel)
+                .takeWhile(clientChannel -> this.running)
+                .forEach(clientChannel -> clientChannel.ifPresent(channel -> this.nextEventLoop().register(channel)));
+    }
+
+    private EventLoop nextEventLoop() {
+        EventLoop eventLoop = this.eventLoops[this.nextEventLoop];
+        this.nextEventLoop = (this.nextEventLoop + 1) % this.eventLoops.length;
+        return eventLoop;
+    }
+
+    private Optional<SocketChannel> tryAcceptChannel() {
+        try {
+            return Optional.of(this.serverChannel.accept());
+        } catch (IOException e) {
+            System.err.println("Error accepting client connection: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
     @Override
     public void shutdown() {
         System.out.println("Broker shutting down...");
         this.running = false;
         this.clientHandlerPool.shutdownNow();
+        if (this.eventLoops != null) {
+            for (EventLoop eventLoop : this.eventLoops) {
+                if (eventLoop != null)
+                    eventLoop.shutdown();
+            }
+        }
+        // pending messages go back to their queues before the last records are written and the logs are closed
+        this.queues.values().forEach(NamedQueue::shutdown);
+        this.committer.shutdown();
+        this.timers.shutdown();
+        this.queues.values().forEach(NamedQueue::close);
+        this.topology.close();
         this.deregisterWithDNS();
 
         try {
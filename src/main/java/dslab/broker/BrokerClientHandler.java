@@ -1,65 +1,245 @@
 package dslab.broker;
 
 import java.io.IOException;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class BrokerClientHandler implements Runnable {
 
-    private final Socket clientSocket;
+    static final int MAX_BATCH_SIZE = 65536;
+    static final int MAX_UNFLUSHED_RESPONSES = 4096;
+
+    private static final byte[] PUBLISH = ascii("publish");
+    private static final byte[] PUBLISH_BATCH = ascii("publish-batch");
+    private static final byte[] BIND = ascii("bind");
+    private static final byte[] UNBIND = ascii("unbind");
+    private static final byte[] QUEUE = ascii("queue");
+    private static final byte[] QUEUE_DELETE = ascii("queue-delete");
+    private static final byte[] EXCHANGE = ascii("exchange");
+    private static final byte[] EXCHANGE_DELETE = ascii("exchange-delete");
+    private static final byte[] SUBSCRIBE = ascii("subscribe");
+    private static final byte[] EXIT = ascii("exit");
+    private static final byte[] CREDIT = ascii("credit");
+    private static final byte[] PRIORITY = ascii("priority=");
+    private static final byte[] OK = ascii("ok");
+
     private final Map<String, Exchange> exchanges;
     private final Map<String, NamedQueue> queues;
     private final Exchange defaultExchange;
-    private BufferedWriter writer;
-    private BufferedReader reader;
+    private final SubscriptionSettings subscriptionSettings;
+    private final QueueFactory queueFactory;
+    private final GroupCommitter committer;
+    private final TopologyStore topology;
+    private final TimerWheel timers;
+    private final QueueReaper reaper;
+    private ClientChannel channel;
+    private LineReader reader;
     private NamedQueue queue;
     private Exchange exchange;
+    private Subscription subscription;
+    private final List<NamedQueue> exclusiveQueues = new ArrayList<>();
+    private final CommandLine command = new CommandLine();
+    private byte[] routingKeyBytes;
+    private String routingKey;
+    private long ttlMillis;
+    private int priority;
+    private String batchRoutingKey;
+    private int batchSize;
+    private long batchTtlMillis;
+    private int batchPriority;
+    private List<Message> batchMessages;
+    private int unflushedResponses;
+    private long unconfirmedTicket;
+    private long callbackTicket;
 
     private volatile boolean shouldRun = true;
 
-    public BrokerClientHandler(Socket clientSocket, Map<String, Exchange> exchanges,
-                               Map<String, NamedQueue> queues, Exchange defaultExchange) {
-        this.clientSocket = clientSocket;
-        this.exchanges = exchanges;
-        this.queues = queues;
-        this.defaultExchange = defaultExchange;
+    public BrokerClientHandler(Socket clientSocket, BrokerContext context) {
+        this.exchanges = context.exchanges();
+        this.queues = context.queues();
+        this.defaultExchange = context.defaultExchange();
+        this.subscriptionSettings = context.subscriptionSettings();
+        this.queueFactory = context.queueFactory();
+        this.committer = context.committer();
+        this.topology = context.topology();
+        this.timers = context.timers();
+        this.reaper = context.reaper();
         try {
-            this.reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-            this.writer = new BufferedWriter(new OutputStreamWriter(clientSocket.getOutputStream()));
+            this.reader = new LineReader(clientSocket.getInputStream());
+            this.channel = new SocketClientChannel(clientSocket);
         } catch (IOException e) {
             System.err.println("error: failed to initialize reader/writer for client.");
             this.shouldRun = false;
         }
     }
 
+    /**
+     * Creates a handler whose input is pushed line by line via {@link #handleLine(byte[], int, int)},
+     * e.g. by a selector-based {@link EventLoop}.
+     */
+    BrokerClientHandler(ClientChannel channel, BrokerContext context) {
+        this.channel = channel;
+        this.exchanges = context.exchanges();
+        this.queues = context.queues();
+        this.defaultExchange = context.defaultExchange();
+        this.subscriptionSettings = context.subscriptionSettings();
+        this.queueFactory = context.queueFactory();
+        this.committer = context.committer();
+        this.topology = context.topology();
+        this.timers = context.timers();
+        this.reaper = context.reaper();
+    }
+
     @Override
     public void run() {
         if (!this.shouldRun)
             return;
 
-        this.writeToClient("ok SMQP");
-        System.out.println("Client connected.");
+        this.onConnect();
 
         while (this.shouldRun) {
-            String line = this.readFromClient();
-            if (line == null || line.isBlank())
-                continue;
-            String[] command = line.split(" ");
-
-            switch (command[0]) {
-                case "exit" -> this.handleExit(command);
-                case "bind" -> this.handleBind(command);
-                case "queue" -> this.handleQueue(command);
-                case "publish" -> this.handlePublish(command);
-                case "exchange" -> this.handleExchange(command);
-                case "subscribe" -> this.handleSubscribe(command);
-                default -> this.writeToClient("error: unknown command: " + command[0]);
+            // answer all pipelined commands that are already buffered with a single flush
+            if (!this.hasBufferedInput() || this.unflushedResponses >= MAX_UNFLUSHED_RESPONSES) {
+                this.awaitDurableResponses();
+                this.flushToClient();
+            }
+
+            int length = this.readFromClient();
+            if (length < 0) {
+                this.onDisconnect();
+                return;
             }
+            this.handleLine(this.reader.array(), this.reader.lineStart(), length);
+        }
+    }
+
+    void onConnect() {
+        this.writeToClient("ok SMQP");
+        System.out.println("Client connected.");
+    }
+
+    /**
+     * Handles a line the client sent, given as its UTF-8 bytes without terminator. The bytes are only valid during
+     * the call; message payloads are copied out of them once and never decoded.
+     */
+    void handleLine(byte[] bytes, int offset, int length) {
+        // lines following publish-batch are message bodies, not commands
+        if (this.batchMessages != null) {
+            this.collectBatchMessage(Arrays.copyOfRange(bytes, offset, offset + length));
+            return;
+        }
+
+        CommandLine command = this.command;
+        command.parse(bytes, offset, length);
+
+        // while subscribed, any input from the client other than a credit grant ends the subscription
+        if (this.subscription != null) {
+            if (this.subscription.isCreditBased() && command.count() > 0 && command.is(0, CREDIT))
+                this.handleCredit();
+            else
+                this.endSubscription();
+            return;
+        }
+
+        if (command.isBlank())
+            return;
+
+        // publishes first, they are by far the most frequent commands
+        if (command.is(0, PUBLISH))
+            this.handlePublish();
+        else if (command.is(0, PUBLISH_BATCH))
+            this.handlePublishBatch();
+        else if (command.is(0, BIND))
+            this.handleBind(command.strings());
+        else if (command.is(0, UNBIND))
+            this.handleUnbind(command.strings());
+        else if (command.is(0, QUEUE))
+            this.handleQueue(command.strings());
+        else if (command.is(0, QUEUE_DELETE))
+            this.handleQueueDelete(command.strings());
+        else if (command.is(0, EXCHANGE))
+            this.handleExchange(command.strings());
+        else if (command.is(0, EXCHANGE_DELETE))
+            this.handleExchangeDelete(command.strings());
+        else if (command.is(0, SUBSCRIBE))
+            this.handleSubscribe(command.strings());
+        else if (command.is(0, EXIT))
+            this.handleExit(command.strings());
+        else
+            this.writeToClient("error: unknown command: " + command.string(0));
+    }
+
+    /**
+     * Called when the client closed the connection without sending {@code exit}.
+     */
+    void onDisconnect() {
+        if (!this.shouldRun)
+            return;
+
+        this.shouldRun = false;
+        if (this.subscription != null)
+            this.stopSubscription();
+        this.deleteExclusiveQueues();
+        this.closeResources();
+        System.out.println("Client disconnected.");
+    }
+
+    /**
+     * Deletes the queues this connection declared exclusive, together with their bindings.
+     */
+    private void deleteExclusiveQueues() {
+        for (NamedQueue queue : this.exclusiveQueues)
+            this.reaper.delete(queue);
+        this.exclusiveQueues.clear();
+    }
+
+    boolean isRunning() {
+        return this.shouldRun;
+    }
+
+    /**
+     * Whether all responses written so far may be sent, i.e. the publishes they confirm are durable. If not,
+     * {@code onDurable} is run once they are; it is registered only once per outstanding publish.
+     */
+    boolean canFlush(Runnable onDurable) {
+        if (this.unconfirmedTicket == 0)
+            return true;
+        if (this.committer.isDurable(this.unconfirmedTicket)) {
+            this.unconfirmedTicket = 0;
+            return true;
+        }
+
+        if (this.callbackTicket != this.unconfirmedTicket) {
+            this.callbackTicket = this.unconfirmedTicket;
+            this.committer.whenDurable(this.unconfirmedTicket, onDurable);
         }
+        return false;
+    }
+
+    private void awaitDurableResponses() {
+        if (this.unconfirmedTicket == 0)
+            return;
+        try {
+            this.committer.awaitDurable(this.unconfirmedTicket);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.unconfirmedTicket = 0;
+    }
+
+    /**
+     * Remembers to hold back the next responses until records submitted since {@code ticketBefore} are durable.
+     */
+    private void trackDurability(long ticketBefore) {
+        long ticket = this.committer.threadTicket();
+        if (ticket != ticketBefore && this.committer.confirmsPublishes())
+            this.unconfirmedTicket = ticket;
     }
 
     private void handleBind(String[] args) {
@@ -72,30 +252,149 @@ public class BrokerClientHandler implements Runnable {
             this.writeToClient("error, queue or exchange not found.");
             return;
         }
+        if (this.queue.isDeleted()) {
+            this.writeToClient("error, queue was deleted");
+            return;
+        }
+        if (this.isExchangeDeleted()) {
+            this.writeToClient("error, exchange was deleted");
+            return;
+        }
 
-        String routingKey = args[1];
+        String routingKey;
+        try {
+            routingKey = this.exchange.bindingKey(args[1]);
+        } catch (IllegalArgumentException e) {
+            this.writeToClient("error, " + e.getMessage());
+            return;
+        }
 
         this.exchange.bind(this.queue, routingKey);
-        this.writeToClient("ok");
+        this.topology.queueBound(this.exchange.getName(), this.queue.getName(), routingKey);
+        this.writeToClient(OK);
     }
 
-    private void handleQueue(String[] args) {
+    private void handleUnbind(String[] args) {
         if (args.length != 2) {
-            this.writeToClient("error, usage: queue <name>");
+            this.writeToClient("error, usage: unbind <binding key>");
+            return;
+        }
+
+        if (this.queue == null || this.exchange == null) {
+            this.writeToClient("error, queue or exchange not found.");
+            return;
+        }
+        // every queue stays reachable under its name, the binding is not persisted and would come back on restart
+        if (this.exchange == this.defaultExchange) {
+            this.writeToClient("error, queues cannot be unbound from the default exchange");
+            return;
+        }
+        if (this.isExchangeDeleted()) {
+            this.writeToClient("error, exchange was deleted");
+            return;
+        }
+
+        String routingKey;
+        try {
+            routingKey = this.exchange.bindingKey(args[1]);
+        } catch (IllegalArgumentException e) {
+            this.writeToClient("error, " + e.getMessage());
+            return;
+        }
+
+        this.exchange.unbind(this.queue, routingKey);
+        this.topology.queueUnbound(this.exchange.getName(), this.queue.getName(), routingKey);
+        this.writeToClient(OK);
+    }
+
+    /**
+     * Whether the selected exchange was deleted since the client declared it. Its bindings are gone, the client has
+     * to declare the exchange again.
+     */
+    private boolean isExchangeDeleted() {
+        return this.exchanges.get(this.exchange.getName()) != this.exchange;
+    }
+
+    private void handleQueue(String[] args) {
+        if (args.length < 2) {
+            this.writeToClient("error, usage: queue <name> [arguments...]");
             return;
         }
 
         String queueName = args[1];
+        QueueOptions options;
+        try {
+            options = QueueOptions.parse(args, 2);
+        } catch (IllegalArgumentException e) {
+            this.writeToClient("error, " + e.getMessage());
+            return;
+        }
+
+        NamedQueue queue;
+        try {
+            // an expiring queue may be deleted concurrently, it is marked deleted before it leaves the map
+            do {
+                queue = this.queues.computeIfAbsent(queueName, name -> {
+                    NamedQueue created = this.queueFactory.create(name, options);
+                    // an exclusive queue does not outlive its connection, so it is not persisted either
+                    if (options.exclusive()) {
+                        created.setOwner(this);
+                        this.exclusiveQueues.add(created);
+                    } else {
+                        this.topology.queueDeclared(name, options);
+                    }
+                    this.reaper.watch(created);
+                    return created;
+                });
+            } while (queue.isDeleted());
+        } catch (UncheckedIOException e) {
+            System.err.println("error: failed to create queue " + queueName + ". " + e.getCause().getMessage());
+            this.writeToClient("error, failed to create queue");
+            return;
+        }
+
+        if (!queue.isAccessibleBy(this)) {
+            this.writeToClient("error, queue is exclusive to another connection");
+            return;
+        }
+        // redeclaring without arguments refers to the existing queue, whatever it was declared with
+        if (args.length > 2 && !queue.getOptions().equals(options)) {
+            this.writeToClient("error, queue already declared with different arguments");
+            return;
+        }
 
-        this.queue = this.queues.computeIfAbsent(queueName, NamedQueue::new);
+        queue.touch();
+        this.queue = queue;
         this.bindToDefaultOnCreate(queueName, this.queue);
-        this.writeToClient("ok");
+        this.writeToClient(OK);
     }
 
     private void bindToDefaultOnCreate(String queueName, NamedQueue queue) {
         this.defaultExchange.bind(queue, queueName);
     }
 
+    private void handleQueueDelete(String[] args) {
+        if (args.length != 2) {
+            this.writeToClient("error, usage: queue-delete <name>");
+            return;
+        }
+
+        NamedQueue queue = this.queues.get(args[1]);
+        if (queue == null) {
+            this.writeToClient("error, queue not found");
+            return;
+        }
+        if (!queue.isAccessibleBy(this)) {
+            this.writeToClient("error, queue is exclusive to another connection");
+            return;
+        }
+
+        // clients that still have the queue selected learn of the deletion on their next bind or subscribe
+        this.reaper.delete(queue);
+        this.exclusiveQueues.remove(queue);
+        this.writeToClient(OK);
+    }
+
     private void handleExchange(String[] args) {
         if (args.length != 3) {
             this.writeToClient("error, usage: exchange <type> <name>");
@@ -112,19 +411,55 @@ public class BrokerClientHandler implements Runnable {
 
         switch (type) {
             case "default" -> this.exchange = this.defaultExchange;
-            case "topic" -> this.exchange = this.exchanges.computeIfAbsent(exchangeName, TopicExchange::new);
-            case "fanout" -> this.exchange = this.exchanges.computeIfAbsent(exchangeName, FanoutExchange::new);
-            case "direct" -> this.exchange = this.exchanges.computeIfAbsent(exchangeName, DirectExchange::new);
+            // journaled while the map holds the key, so no binding to the exchange can be journaled before it
+            case "topic", "fanout", "direct", "headers" ->
+                    this.exchange = this.exchanges.computeIfAbsent(exchangeName, name -> {
+                        this.topology.exchangeDeclared(type, name);
+                        return Exchange.of(type, name);
+                    });
             default -> {
             }
         }
 
-        this.writeToClient("ok");
+        this.writeToClient(OK);
     }
 
-    private void handlePublish(String[] args) {
-        if (args.length != 3) {
-            this.writeToClient("error, usage: publish <routing-key> <message>");
+    private void handleExchangeDelete(String[] args) {
+        if (args.length != 2) {
+            this.writeToClient("error, usage: exchange-delete <name>");
+            return;
+        }
+
+        String exchangeName = args[1];
+        Exchange exchange = this.exchanges.get(exchangeName);
+        if (exchange == null) {
+            this.writeToClient("error, exchange not found");
+            return;
+        }
+        if (exchange == this.defaultExchange) {
+            this.writeToClient("error, the default exchange cannot be deleted");
+            return;
+        }
+
+        // journaled while the map holds the key, like the declaration, so the journal keeps their order
+        this.exchanges.computeIfPresent(exchangeName, (name, deleted) -> {
+            this.topology.exchangeDeleted(name);
+            deleted.clear();
+            return null;
+        });
+        this.writeToClient(OK);
+    }
+
+    private void handlePublish() {
+        CommandLine args = this.command;
+        if (args.count() < 3 || args.count() > 5) {
+            this.writeToClient("error, usage: publish <routing-key> <message> [ttl] [priority=<n>]");
+            return;
+        }
+        try {
+            this.parseProperties(3);
+        } catch (IllegalArgumentException e) {
+            this.writeToClient("error, " + e.getMessage());
             return;
         }
 
@@ -133,30 +468,190 @@ public class BrokerClientHandler implements Runnable {
             return;
         }
 
-        String routingKey = args[1];
-        String message = args[2];
+        String routingKey = this.routingKey(1);
+        Message message = this.createMessage(args.copy(2), this.ttlMillis, this.priority);
 
+        long ticket = this.committer.threadTicket();
+        long rejections = BoundedMessageBuffer.threadRejections();
         this.exchange.publish(routingKey, message);
-        this.writeToClient("ok");
+        this.trackDurability(ticket);
+        this.writePublishResponse(rejections);
+    }
+
+    private void handlePublishBatch() {
+        CommandLine args = this.command;
+        long count = args.count() < 3 || args.count() > 5 ? -1 : args.number(2);
+        if (count < 0) {
+            this.writeToClient("error, usage: publish-batch <routing-key> <count> [ttl] [priority=<n>]");
+            return;
+        }
+
+        if (count < 1 || count > MAX_BATCH_SIZE) {
+            this.writeToClient("error, batch size must be between 1 and " + MAX_BATCH_SIZE);
+            return;
+        }
+
+        try {
+            this.parseProperties(3);
+        } catch (IllegalArgumentException e) {
+            this.writeToClient("error, " + e.getMessage());
+            return;
+        }
+
+        this.batchRoutingKey = this.routingKey(1);
+        this.batchSize = (int) count;
+        this.batchTtlMillis = this.ttlMillis;
+        this.batchPriority = this.priority;
+        this.batchMessages = new ArrayList<>(this.batchSize);
+    }
+
+    /**
+     * Returns the routing key token as a string. A publisher mostly keeps using the same key, so the previous string
+     * is returned again as long as the key bytes are unchanged.
+     */
+    private String routingKey(int index) {
+        if (this.routingKeyBytes == null || !this.command.is(index, this.routingKeyBytes)) {
+            this.routingKeyBytes = this.command.copy(index);
+            this.routingKey = this.command.string(index);
+        }
+        return this.routingKey;
+    }
+
+    /**
+     * Parses the optional arguments following a publish, a time to live in milliseconds and {@code priority=<n>},
+     * into {@link #ttlMillis} (0 for none) and {@link #priority}.
+     *
+     * @throws IllegalArgumentException if an argument is invalid or given twice
+     */
+    private void parseProperties(int from) {
+        CommandLine args = this.command;
+        this.ttlMillis = 0;
+        this.priority = -1;
+        for (int i = from; i < args.count(); i++) {
+            boolean isPriority = args.startsWith(i, PRIORITY);
+            if (isPriority ? this.priority >= 0 : this.ttlMillis > 0)
+                throw new IllegalArgumentException("invalid publish argument: " + args.string(i));
+
+            if (isPriority) {
+                long priority = args.number(i, PRIORITY.length);
+                if (priority < 0 || priority > Message.MAX_PRIORITY)
+                    throw new IllegalArgumentException("priority must be between 0 and " + Message.MAX_PRIORITY);
+                this.priority = (int) priority;
+            } else {
+                this.ttlMillis = args.number(i);
+                if (this.ttlMillis < 1)
+                    throw new IllegalArgumentException("ttl must be a positive number of milliseconds");
+            }
+        }
+        this.priority = Math.max(this.priority, 0);
+    }
+
+    /**
+     * Creates a message, expiring after the time to live unless that is 0. The payload of an expiring message is
+     * dropped by the broker's timer wheel once its deadline passed, wherever it is still queued.
+     */
+    private Message createMessage(byte[] payload, long ttlMillis, int priority) {
+        if (ttlMillis == 0)
+            return new Message(payload, priority);
+
+        Message message = Message.withTtl(payload, TimeUnit.MILLISECONDS.toNanos(ttlMillis), priority);
+        // weakly, a delivered or dropped message must not be kept alive until its deadline
+        this.timers.scheduleWeakly(message.deadline(), message, Message::expire);
+        return message;
+    }
+
+    private void collectBatchMessage(byte[] message) {
+        this.batchMessages.add(this.createMessage(message, this.batchTtlMillis, this.batchPriority));
+        if (this.batchMessages.size() < this.batchSize)
+            return;
+
+        List<Message> messages = this.batchMessages;
+        this.batchMessages = null;
+
+        // the message lines are consumed either way to keep the connection in sync
+        if (this.exchange == null) {
+            this.writeToClient("error, exchange not set");
+            return;
+        }
+
+        long ticket = this.committer.threadTicket();
+        long rejections = BoundedMessageBuffer.threadRejections();
+        this.exchange.publishAll(this.batchRoutingKey, messages);
+        this.trackDurability(ticket);
+        this.writePublishResponse(rejections);
+    }
+
+    /**
+     * Answers a publish with an error if a bounded queue it was routed to rejected it. Other queues may still have
+     * accepted it.
+     */
+    private void writePublishResponse(long rejectionsBefore) {
+        long rejected = BoundedMessageBuffer.threadRejections() - rejectionsBefore;
+        if (rejected > 0)
+            this.writeToClient("error, queue full, " + rejected + " message(s) rejected");
+        else
+            this.writeToClient(OK);
     }
 
     private void handleSubscribe(String[] args) {
-        if (args.length != 1) {
-            this.writeToClient("error, usage: subscribe");
+        if (args.length > 2) {
+            this.writeToClient("error, usage: subscribe [prefetch]");
             return;
         }
 
+        int prefetch = 0;
+        if (args.length == 2) {
+            try {
+                prefetch = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                prefetch = -1;
+            }
+            if (prefetch < 1) {
+                this.writeToClient("error, prefetch must be a positive number");
+                return;
+            }
+        }
+
         if (this.queue == null) {
             this.writeToClient("error, queue not set");
             return;
         }
+        if (this.queue.isDeleted()) {
+            this.writeToClient("error, queue was deleted");
+            return;
+        }
+
+        this.writeToClient(OK);
+        this.subscription = args.length == 2
+                ? new Subscription(this.queue, this::pushToClient, this.subscriptionSettings, prefetch)
+                : new Subscription(this.queue, this::pushToClient, this.subscriptionSettings);
+        this.subscription.setWhenWritten(this.channel::whenWritten);
+        this.subscription.start();
+    }
+
+    /**
+     * Grants a credit-based subscription more messages. Successful grants are not answered, as the response would
+     * be interleaved with the delivered messages.
+     */
+    private void handleCredit() {
+        long credits = this.command.count() == 2 ? this.command.number(1) : -1;
+        if (credits < 1 || credits > Integer.MAX_VALUE) {
+            this.pushResponse("error, usage: credit <count>");
+            return;
+        }
+        this.subscription.grant((int) credits);
+    }
+
+    private void endSubscription() {
+        this.stopSubscription();
+        this.writeToClient(OK);
+    }
 
-        Subscription subscription = new Subscription(this.queue, this::writeToClient);
-        subscription.start();
-        this.writeToClient("ok");
-        this.readFromClient();
-        subscription.interrupt();
-        this.writeToClient("ok");
+    private void stopSubscription() {
+        this.subscription.interrupt();
+        this.subscription = null;
+        // the subscription was on the selected queue, which cannot change while subscribed
+        this.reaper.unsubscribed(this.queue);
     }
 
     private void handleExit(String[] args) {
@@ -165,37 +660,98 @@ public class BrokerClientHandler implements Runnable {
             return;
         }
 
+        this.shouldRun = false;
+        this.deleteExclusiveQueues();
+        this.writeToClient("ok bye");
+        // a non-blocking channel holds back its final flush by itself, see canFlush
+        if (this.reader != null)
+            this.awaitDurableResponses();
+        this.closeResources();
+        System.out.println("Client disconnected.");
+    }
+
+    private void closeResources() {
         try {
-            this.shouldRun = false;
-            if (this.writer != null) {
-                this.writeToClient("ok bye");
-                this.writer.close();
-            }
+            this.channel.close();
             if (this.reader != null)
                 this.reader.close();
-            if (this.clientSocket != null && !this.clientSocket.isClosed())
-                this.clientSocket.close();
-            System.out.println("Client disconnected.");
         } catch (IOException e) {
             System.err.println("error: failed to close resources. " + e.getMessage());
         }
     }
 
     private void writeToClient(String message) {
+        this.writeToClient(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeToClient(byte[] message) {
+        try {
+            this.unflushedResponses++;
+            this.channel.write(message);
+        } catch (IOException e) {
+            System.err.println("error: failed writing to client. " + e.getMessage());
+        }
+    }
+
+    /**
+     * Used by subscriptions: a pushed batch is flushed right away, as no response flush follows it.
+     */
+    private void pushToClient(List<Message> messages) {
+        try {
+            for (Message message : messages) {
+                byte[] payload = message.payload();
+                // the message may have expired after the subscription checked it
+                if (payload != null)
+                    this.channel.write(payload);
+            }
+            this.channel.flush();
+        } catch (IOException e) {
+            System.err.println("error: failed writing to client. " + e.getMessage());
+        }
+    }
+
+    /**
+     * Answers a line sent while subscribed; like a pushed batch it is flushed right away.
+     */
+    private void pushResponse(String response) {
+        try {
+            this.channel.write(response);
+            this.channel.flush();
+        } catch (IOException e) {
+            System.err.println("error: failed writing to client. " + e.getMessage());
+        }
+    }
+
+    private void flushToClient() {
         try {
-            this.writer.write(message + "\n");
-            this.writer.flush();
+            this.unflushedResponses = 0;
+            this.channel.flush();
         } catch (IOException e) {
             System.err.println("error: failed writing to client. " + e.getMessage());
         }
     }
 
-    private String readFromClient() {
+    private boolean hasBufferedInput() {
+        try {
+            return this.reader.ready();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the length of the next line, see {@link LineReader#readLine()}, or -1 once the client is gone.
+     */
+    private int readFromClient() {
         try {
             return this.reader.readLine();
         } catch (IOException e) {
-            System.err.println("error: failed reading from client.");
-            return null;
+            System.err.println("error: failed reading from client. " + e.getMessage());
+            return -1;
         }
     }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
 }
@@ -0,0 +1,19 @@
+package dslab.broker;
+
+import java.util.Map;
+
+/**
+ * Broker-wide state and services shared by all client handlers.
+ */
+public record BrokerContext(
+        Map<String, Exchange> exchanges,
+        Map<String, NamedQueue> queues,
+        Exchange defaultExchange,
+        SubscriptionSettings subscriptionSettings,
+        QueueFactory queueFactory,
+        GroupCommitter committer,
+        TopologyStore topology,
+        TimerWheel timers,
+        QueueReaper reaper
+) {
+}
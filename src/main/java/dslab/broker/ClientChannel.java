@@ -0,0 +1,34 @@
+package dslab.broker;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Outbound side of a client connection as seen by {@link BrokerClientHandler}.
+ * Implementations must accept writes from subscription threads concurrently to the handler thread.
+ * Written lines may be buffered until the next {@link #flush()}; their order is always preserved.
+ */
+interface ClientChannel {
+
+    default void write(String message) throws IOException {
+        this.write(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes an encoded line without its terminator. The array may be shared with other channels, it is neither
+     * modified nor retained beyond the write to the socket.
+     */
+    void write(byte[] line) throws IOException;
+
+    void flush() throws IOException;
+
+    /**
+     * Runs the action once all lines written so far, and flushed, reached the socket. A channel that writes to the
+     * socket on {@link #flush()} has done so already and runs it right away.
+     */
+    default void whenWritten(Runnable action) {
+        action.run();
+    }
+
+    void close() throws IOException;
+}
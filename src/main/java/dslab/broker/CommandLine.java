@@ -0,0 +1,137 @@
+package dslab.broker;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Tokenizer for SMQP command lines, working in place on the bytes a line was read into.
+ * <p>
+ * Tokens are separated by single spaces and counted like {@link String#split(String)} with {@code " "} does:
+ * consecutive spaces delimit empty tokens and trailing empty tokens are dropped. Each token is an offset and length
+ * into the line; comparing, matching and parsing numbers work on these views, so tokenizing a line allocates nothing.
+ * Only {@link #string(int)} and {@link #copy(int)} create objects, for the tokens a command actually keeps. A space
+ * never occurs inside a multi-byte UTF-8 sequence, so every token's bytes are exactly its encoding.
+ * <p>
+ * A handler reuses one instance for all of its lines; the views are valid until the next {@link #parse}.
+ */
+final class CommandLine {
+
+    private byte[] bytes;
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private int count;
+
+    void parse(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.count = 0;
+        int end = offset + length;
+        int start = offset;
+        for (int i = offset; i < end; i++) {
+            if (bytes[i] == ' ') {
+                this.add(start, i);
+                start = i + 1;
+            }
+        }
+        this.add(start, end);
+
+        while (this.count > 0 && this.starts[this.count - 1] == this.ends[this.count - 1])
+            this.count--;
+    }
+
+    private void add(int start, int end) {
+        if (this.count == this.starts.length) {
+            this.starts = Arrays.copyOf(this.starts, 2 * this.count);
+            this.ends = Arrays.copyOf(this.ends, 2 * this.count);
+        }
+        this.starts[this.count] = start;
+        this.ends[this.count] = end;
+        this.count++;
+    }
+
+    /**
+     * Number of tokens, 0 for a line of spaces only.
+     */
+    int count() {
+        return this.count;
+    }
+
+    /**
+     * Whether the line consists of whitespace only.
+     */
+    boolean isBlank() {
+        for (int i = 0; i < this.count; i++) {
+            for (int j = this.starts[i]; j < this.ends[i]; j++) {
+                if (!Character.isWhitespace(this.bytes[j]))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether the token consists of exactly the given bytes, e.g. a command name.
+     */
+    boolean is(int index, byte[] literal) {
+        return this.length(index) == literal.length && this.startsWith(index, literal);
+    }
+
+    boolean startsWith(int index, byte[] prefix) {
+        int start = this.starts[index];
+        if (this.length(index) < prefix.length)
+            return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (this.bytes[start + i] != prefix[i])
+                return false;
+        }
+        return true;
+    }
+
+    int length(int index) {
+        return this.ends[index] - this.starts[index];
+    }
+
+    /**
+     * Parses the token, skipping the first {@code skip} bytes, as a non-negative decimal number.
+     *
+     * @return the number, or -1 if the token is not one or exceeds {@link Long#MAX_VALUE}
+     */
+    long number(int index, int skip) {
+        int start = this.starts[index] + skip;
+        int end = this.ends[index];
+        if (start < end && this.bytes[start] == '+')
+            start++;
+        if (start >= end)
+            return -1;
+
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = this.bytes[i] - '0';
+            if (digit < 0 || digit > 9 || value > (Long.MAX_VALUE - digit) / 10)
+                return -1;
+            value = 10 * value + digit;
+        }
+        return value;
+    }
+
+    long number(int index) {
+        return this.number(index, 0);
+    }
+
+    String string(int index) {
+        return new String(this.bytes, this.starts[index], this.length(index), StandardCharsets.UTF_8);
+    }
+
+    byte[] copy(int index) {
+        return Arrays.copyOfRange(this.bytes, this.starts[index], this.ends[index]);
+    }
+
+    /**
+     * Decodes all tokens, for commands that are rare enough not to matter.
+     */
+    String[] strings() {
+        String[] strings = new String[this.count];
+        for (int i = 0; i < this.count; i++)
+            strings[i] = this.string(i);
+        return strings;
+    }
+}
@@ -0,0 +1,269 @@
+package dslab.broker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of a durable queue, split into memory-mapped segment files.
+ * <p>
+ * A record is {@code [int size][int crc32c][payload]}, where {@code size} includes the header and is never zero, so
+ * a zero marks the end of the written part of a segment. The size is written last, so a torn record is either
+ * invisible or fails its checksum. Offsets are global byte positions: every segment file is named after the offset
+ * of its first record. How far the log was consumed is kept in a small mapped offset file; segments that were
+ * consumed completely are deleted.
+ * <p>
+ * Not thread-safe, the owning buffer serializes all calls.
+ */
+class CommitLog implements Closeable {
+
+    static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private static final int HEADER_SIZE = 8;
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String OFFSET_FILE = "consumed.offset";
+
+    /**
+     * Receives every unconsumed record found while opening a log.
+     */
+    interface RecordConsumer {
+        void accept(byte[] payload, long endOffset);
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final FileChannel offsetChannel;
+    private final MappedByteBuffer offsetBuffer;
+    private final CRC32C crc = new CRC32C();
+    private long consumedOffset;
+
+    private CommitLog(Path directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.offsetChannel = FileChannel.open(directory.resolve(OFFSET_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.offsetBuffer = this.offsetChannel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+        this.consumedOffset = this.offsetBuffer.getLong(0);
+    }
+
+    /**
+     * Opens the log in the given directory, creating it if necessary, and replays all unconsumed records.
+     */
+    static CommitLog open(Path directory, int segmentSize, RecordConsumer recovered) throws IOException {
+        Files.createDirectories(directory);
+        CommitLog log = new CommitLog(directory, segmentSize);
+        try {
+            log.recover(recovered);
+        } catch (IOException e) {
+            log.close();
+            throw e;
+        }
+        return log;
+    }
+
+    private void recover(RecordConsumer recovered) throws IOException {
+        List<Long> bases = new ArrayList<>();
+        try (Stream<Path> files = Files.list(this.directory)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> name.substring(0, name.length() - SEGMENT_SUFFIX.length()))
+                    .forEach(base -> bases.add(Long.parseLong(base)));
+        }
+        bases.sort(null);
+
+        for (long base : bases) {
+            Path path = this.segmentPath(base);
+            if (Files.size(path) == 0) {
+                Files.delete(path);
+                continue;
+            }
+
+            Segment segment = this.openSegment(base, 0);
+            this.segments.add(segment);
+            this.scan(segment, recovered);
+        }
+
+        if (this.segments.isEmpty())
+            this.segments.add(this.openSegment(Math.max(this.consumedOffset, 0), this.segmentSize));
+        this.deleteConsumedSegments();
+    }
+
+    /**
+     * Replays the valid records of a segment and positions it after the last one. Anything after a damaged record
+     * is cleared, so it cannot be mistaken for records later on.
+     */
+    private void scan(Segment segment, RecordConsumer recovered) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+
+        while (position + HEADER_SIZE <= buffer.capacity()) {
+            int size = buffer.getInt(position);
+            if (size == 0)
+                break;
+            if (size < HEADER_SIZE || position + size > buffer.capacity() || !this.isValid(buffer, position, size)) {
+                System.err.println("error: damaged record in " + segment.path + " at " + position + ", truncating.");
+                for (int i = position; i < buffer.capacity(); i++)
+                    buffer.put(i, (byte) 0);
+                break;
+            }
+
+            long endOffset = segment.base + position + size;
+            if (endOffset > this.consumedOffset) {
+                byte[] payload = new byte[size - HEADER_SIZE];
+                buffer.get(position + HEADER_SIZE, payload);
+                recovered.accept(payload, endOffset);
+            }
+            position += size;
+        }
+        segment.position = position;
+        segment.forcedPosition = position;
+    }
+
+    private boolean isValid(MappedByteBuffer buffer, int position, int size) {
+        this.crc.reset();
+        this.crc.update(buffer.slice(position + HEADER_SIZE, size - HEADER_SIZE));
+        return (int) this.crc.getValue() == buffer.getInt(position + Integer.BYTES);
+    }
+
+    /**
+     * Appends a record and returns its end offset, which identifies it in {@link #markConsumed(long)}.
+     */
+    long append(byte[] payload) throws IOException {
+        if (this.segments.isEmpty())
+            throw new IOException("commit log is closed");
+
+        int size = HEADER_SIZE + payload.length;
+
+        Segment segment = this.segments.getLast();
+        if (segment.position + size > segment.buffer.capacity()) {
+            segment = this.openSegment(segment.end(), Math.max(this.segmentSize, size));
+            this.segments.add(segment);
+        }
+
+        this.crc.reset();
+        this.crc.update(payload);
+
+        MappedByteBuffer buffer = segment.buffer;
+        int position = segment.position;
+        buffer.put(position + HEADER_SIZE, payload);
+        buffer.putInt(position + Integer.BYTES, (int) this.crc.getValue());
+        buffer.putInt(position, size);
+        segment.position += size;
+        return segment.end();
+    }
+
+    void markConsumed(long endOffset) {
+        if (this.segments.isEmpty())
+            return;
+        this.consumedOffset = endOffset;
+        this.offsetBuffer.putLong(0, endOffset);
+        if (this.segments.size() > 1 && this.segments.getFirst().end() <= endOffset)
+            this.deleteConsumedSegments();
+    }
+
+    /**
+     * Forces the records appended since the last call to the storage device.
+     */
+    void force() {
+        this.prepareForce().run();
+    }
+
+    /**
+     * Returns an action forcing the records appended so far. Only the segment list needs the owning buffer's lock,
+     * so the slow part may run without it, on the thread that appends.
+     */
+    Runnable prepareForce() {
+        List<Segment> unforced = new ArrayList<>(2);
+        for (Segment segment : this.segments) {
+            if (segment.forcedPosition < segment.position)
+                unforced.add(segment);
+        }
+
+        return () -> {
+            for (Segment segment : unforced) {
+                int position = segment.position;
+                segment.buffer.force(segment.forcedPosition, position - segment.forcedPosition);
+                segment.forcedPosition = position;
+            }
+        };
+    }
+
+    private void deleteConsumedSegments() {
+        while (this.segments.size() > 1 && this.segments.getFirst().end() <= this.consumedOffset) {
+            Segment segment = this.segments.removeFirst();
+            try {
+                segment.channel.close();
+                Files.deleteIfExists(segment.path);
+            } catch (IOException e) {
+                System.err.println("error: failed to delete log segment " + segment.path + ". " + e.getMessage());
+            }
+        }
+    }
+
+    private Segment openSegment(long base, int size) throws IOException {
+        Path path = this.segmentPath(base);
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long length = Math.max(size, channel.size());
+        return new Segment(base, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, length));
+    }
+
+    private Path segmentPath(long base) {
+        return this.directory.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.segments.isEmpty())
+            return;
+        this.force();
+        this.offsetBuffer.force();
+        for (Segment segment : this.segments)
+            segment.channel.close();
+        this.segments.clear();
+        this.offsetChannel.close();
+    }
+
+    /**
+     * Closes the log and removes its files, including the directory.
+     */
+    void delete() throws IOException {
+        this.close();
+        try (Stream<Path> files = Files.list(this.directory)) {
+            for (Path file : (Iterable<Path>) files::iterator)
+                Files.delete(file);
+        }
+        Files.deleteIfExists(this.directory);
+    }
+
+    private static final class Segment {
+        private final long base;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int position;
+        private int forcedPosition;
+
+        Segment(long base, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.base = base;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        long end() {
+            return this.base + this.position;
+        }
+    }
+}
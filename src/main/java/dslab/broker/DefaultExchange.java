@@ -1,5 +1,6 @@
 package dslab.broker;
 
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class DefaultExchange implements Exchange {
@@ -19,12 +20,44 @@ public class DefaultExchange implements Exchange {
         this.qs.putIfAbsent(queue.getName(), queue);
     }
 
+    /**
+     * Queues are bound under their name only, any other key is not bound.
+     */
     @Override
-    public void publish(String routingKey, String message) {
-        qs.computeIfPresent(routingKey, (key, queue) -> {
+    public boolean unbind(NamedQueue queue, String routingKey) {
+        return this.qs.remove(routingKey, queue);
+    }
+
+    /**
+     * Removes the queue if it is still the one bound under its name.
+     */
+    @Override
+    public void unbind(NamedQueue queue) {
+        this.qs.remove(queue.getName(), queue);
+    }
+
+    @Override
+    public void clear() {
+        this.qs.clear();
+    }
+
+    /**
+     * Delivers to the queue named by the routing key, if there is one. The queue is looked up without locking and the
+     * message enqueued outside the map, so a slow or blocking enqueue never holds up publishes to other queues. A queue
+     * deleted in between drops the message, as it would have dropped it when deleted right after.
+     */
+    @Override
+    public void publish(String routingKey, Message message) {
+        NamedQueue queue = this.qs.get(routingKey);
+        if (queue != null)
             queue.enqueue(message);
-            return queue;
-        });
+    }
+
+    @Override
+    public void publishAll(String routingKey, List<Message> messages) {
+        NamedQueue queue = this.qs.get(routingKey);
+        if (queue != null)
+            queue.enqueueAll(messages);
     }
 
     @Override
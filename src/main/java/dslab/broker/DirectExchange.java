@@ -9,7 +9,7 @@ public class DirectExchange implements Exchange {
 
     private final String name;
     private final String type;
-    private final ConcurrentHashMap<String, List<NamedQueue>> qs;
+    private final ConcurrentHashMap<String, CopyOnWriteArrayList<NamedQueue>> qs;
 
     public DirectExchange(String name) {
         this.name = name;
@@ -18,14 +18,49 @@ public class DirectExchange implements Exchange {
     }
 
     public void bind(NamedQueue queue, String routingKey) {
-        qs.computeIfAbsent(routingKey, key -> new CopyOnWriteArrayList<>()).add(queue);
+        // inside compute, so a concurrent unbind cannot drop the list after this bind added to it
+        qs.compute(routingKey, (key, queues) -> {
+            CopyOnWriteArrayList<NamedQueue> bound = queues != null ? queues : new CopyOnWriteArrayList<>();
+            bound.addIfAbsent(queue);
+            return bound;
+        });
     }
 
-    public void publish(String routingKey, String message) {
+    /**
+     * Removes the binding; the key's entry goes away with its last queue, so the map only holds live keys.
+     */
+    @Override
+    public boolean unbind(NamedQueue queue, String routingKey) {
+        boolean[] removed = new boolean[1];
+        qs.computeIfPresent(routingKey, (key, queues) -> {
+            removed[0] = queues.remove(queue);
+            return queues.isEmpty() ? null : queues;
+        });
+        return removed[0];
+    }
+
+    @Override
+    public void unbind(NamedQueue queue) {
+        for (String routingKey : qs.keySet())
+            this.unbind(queue, routingKey);
+    }
+
+    @Override
+    public void clear() {
+        qs.clear();
+    }
+
+    public void publish(String routingKey, Message message) {
         Optional.ofNullable(qs.get(routingKey))
                 .ifPresent(queues -> queues.forEach(queue -> queue.enqueue(message)));
     }
 
+    @Override
+    public void publishAll(String routingKey, List<Message> messages) {
+        Optional.ofNullable(qs.get(routingKey))
+                .ifPresent(queues -> queues.forEach(queue -> queue.enqueueAll(messages)));
+    }
+
     @Override
     public String getName() {
         return this.name;
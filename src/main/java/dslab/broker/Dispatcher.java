@@ -0,0 +1,219 @@
+package dslab.broker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands the messages of one {@link NamedQueue} to its subscriptions.
+ * <p>
+ * A single thread per queue takes messages and passes each one to the next subscription in round-robin order that
+ * has room in its delivery window, so competing consumers share the load evenly and the queue head has only one
+ * reader. Subscriptions without room are skipped, which weights the distribution by available credit. If no
+ * subscription has room, the dispatcher holds on to at most one message and stops taking from the queue.
+ * <p>
+ * The thread is started with the first subscription and stops once the last one left, so idle queues hold no
+ * thread. The next subscription starts a new one, which waits for the stopped one and continues with the message it
+ * held, so the queue order is kept. {@link #shutdown()} stops dispatching for good and returns a held message to the
+ * buffer.
+ */
+class Dispatcher implements Runnable {
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 1000;
+
+    private final MessageBuffer messages;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition windowOpened = this.lock.newCondition();
+    private final Condition threadStopped = this.lock.newCondition();
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private int cursor;
+    // the current dispatcher thread, a replaced one finishes on its own; written under lock
+    private volatile Thread thread;
+    // started threads that did not finish yet, and the message a stopped one left for the next; guarded by lock
+    private int threads;
+    private Message held;
+    private volatile boolean running = true;
+
+    Dispatcher(MessageBuffer messages) {
+        this.messages = messages;
+    }
+
+    void add(Subscription subscription, ThreadFactory threadFactory) {
+        this.lock.lock();
+        try {
+            this.subscriptions.add(subscription);
+            if (this.thread == null && this.running) {
+                this.thread = threadFactory.newThread(this);
+                this.threads++;
+                this.thread.start();
+            }
+            this.windowOpened.signal();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Once this returns, the subscription will not be offered any further messages. Removing the last subscription
+     * stops the thread without waiting for it.
+     */
+    void remove(Subscription subscription) {
+        Thread idle = null;
+        this.lock.lock();
+        try {
+            this.subscriptions.remove(subscription);
+            if (this.subscriptions.isEmpty()) {
+                idle = this.thread;
+                this.thread = null;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        if (idle != null)
+            idle.interrupt();
+    }
+
+    boolean hasSubscriptions() {
+        this.lock.lock();
+        try {
+            return !this.subscriptions.isEmpty();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Called whenever a subscription may accept further messages.
+     */
+    void onWindowOpened() {
+        this.lock.lock();
+        try {
+            this.windowOpened.signal();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the dispatcher thread and waits until it, and any thread stopped before but still finishing, returned its
+     * pending message to the buffer.
+     */
+    void shutdown() {
+        Thread thread;
+        this.lock.lock();
+        try {
+            this.running = false;
+            thread = this.thread;
+        } finally {
+            this.lock.unlock();
+        }
+        if (thread != null)
+            thread.interrupt();
+
+        Message held;
+        this.lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(SHUTDOWN_TIMEOUT_MILLIS);
+            while (this.threads > 0 && remaining > 0)
+                remaining = this.threadStopped.awaitNanos(remaining);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            held = this.held;
+            this.held = null;
+            this.lock.unlock();
+        }
+        if (held != null)
+            this.messages.requeue(List.of(held));
+    }
+
+    @Override
+    public void run() {
+        // local, as a thread stopped by remove may still be finishing while the next one starts
+        Message pending = null;
+        try {
+            pending = this.awaitStoppedThreads();
+            while (this.running && this.thread == Thread.currentThread()) {
+                if (pending == null)
+                    pending = this.messages.take();
+                // expired messages are dropped at the head, nothing scans the queue for them
+                if (!pending.isExpired())
+                    this.dispatch(pending);
+                pending = null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.stopped(pending);
+        }
+    }
+
+    /**
+     * Waits until the threads started before this one finished and returns the message they left, if any.
+     */
+    private Message awaitStoppedThreads() throws InterruptedException {
+        this.lock.lock();
+        try {
+            while (this.threads > 1)
+                this.threadStopped.await();
+            Message held = this.held;
+            this.held = null;
+            return held;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void stopped(Message pending) {
+        this.lock.lock();
+        try {
+            // keep the message for the next thread, it goes out before anything still in the buffer
+            if (pending != null && this.running) {
+                this.held = pending;
+                pending = null;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        // returned before the thread counts as stopped, so a shutdown does not close the buffer underneath it
+        if (pending != null)
+            this.messages.requeue(List.of(pending));
+
+        this.lock.lock();
+        try {
+            this.threads--;
+            this.threadStopped.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void dispatch(Message message) throws InterruptedException {
+        this.lock.lock();
+        try {
+            Subscription target;
+            while ((target = this.nextWithRoom()) == null)
+                this.windowOpened.await();
+
+            target.offer(message);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private Subscription nextWithRoom() {
+        int size = this.subscriptions.size();
+        for (int i = 0; i < size; i++) {
+            int index = (this.cursor + i) % size;
+            Subscription subscription = this.subscriptions.get(index);
+            if (subscription.tryReserve()) {
+                this.cursor = index + 1;
+                return subscription;
+            }
+        }
+        return null;
+    }
+}
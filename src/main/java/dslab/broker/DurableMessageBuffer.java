@@ -0,0 +1,169 @@
+package dslab.broker;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Buffer of a durable queue: every message is appended to a {@link CommitLog} before it becomes visible to
+ * consumers, and taking a message advances the log's consumed offset. Opening the buffer on an existing log
+ * restores all messages that were not consumed yet.
+ * <p>
+ * Appending is left to the broker's {@link GroupCommitter}: {@link #put(Message)} only submits the message, the
+ * committer's writer thread calls {@link #append(List)} and {@link #force()} for whole batches.
+ * <p>
+ * Messages are also kept in memory for delivery, so the log is only read on recovery. A message handed to a
+ * subscriber counts as consumed, i.e. delivery after a restart is at most once. Only payloads are logged, so
+ * recovered messages no longer expire.
+ */
+class DurableMessageBuffer implements MessageBuffer {
+
+    private final CommitLog log;
+    private final GroupCommitter committer;
+    private final Queue<Entry> messages = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = this.lock.newCondition();
+    private boolean deleted;
+
+    DurableMessageBuffer(Path directory, int segmentSize, GroupCommitter committer) throws IOException {
+        this.log = CommitLog.open(directory, segmentSize,
+                (payload, offset) -> this.messages.add(new Entry(new Message(payload), offset)));
+        this.committer = committer;
+    }
+
+    @Override
+    public void put(Message message) {
+        this.committer.submit(this, List.of(message));
+    }
+
+    @Override
+    public void putAll(List<Message> messages) {
+        if (!messages.isEmpty())
+            this.committer.submit(this, List.copyOf(messages));
+    }
+
+    /**
+     * Appends the messages to the log and makes them visible to consumers; called by the committer only.
+     */
+    void append(List<Message> messages) {
+        this.lock.lock();
+        try {
+            // submitted before the queue was deleted
+            if (this.deleted)
+                return;
+            for (Message message : messages) {
+                byte[] payload = message.payload();
+                // expired while waiting for the committer
+                if (payload != null)
+                    this.messages.add(new Entry(message, this.append(payload)));
+            }
+            this.notEmpty.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Forces the appended messages to the storage device; called by the committer only. Consumers are not blocked
+     * while the device syncs.
+     */
+    void force() {
+        Runnable force;
+        this.lock.lock();
+        try {
+            force = this.log.prepareForce();
+        } finally {
+            this.lock.unlock();
+        }
+        force.run();
+    }
+
+    private long append(byte[] payload) {
+        try {
+            return this.log.append(payload);
+        } catch (IOException e) {
+            // keep serving the message from memory, it is only lost if the broker stops before delivery
+            System.err.println("error: failed to persist message. " + e.getMessage());
+            return -1;
+        }
+    }
+
+    @Override
+    public Message take() throws InterruptedException {
+        this.lock.lockInterruptibly();
+        try {
+            while (this.messages.isEmpty())
+                this.notEmpty.await();
+            return this.consume();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public Message poll() {
+        this.lock.lock();
+        try {
+            return this.messages.isEmpty() ? null : this.consume();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public Message poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        this.lock.lockInterruptibly();
+        try {
+            while (this.messages.isEmpty()) {
+                if (remaining <= 0)
+                    return null;
+                remaining = this.notEmpty.awaitNanos(remaining);
+            }
+            return this.consume();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private Message consume() {
+        Entry entry = this.messages.poll();
+        if (entry.offset() >= 0)
+            this.log.markConsumed(entry.offset());
+        return entry.message();
+    }
+
+    @Override
+    public void close() {
+        this.lock.lock();
+        try {
+            this.log.close();
+        } catch (IOException e) {
+            System.err.println("error: failed to close commit log. " + e.getMessage());
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public void delete() {
+        this.lock.lock();
+        try {
+            this.deleted = true;
+            this.messages.clear();
+            this.log.delete();
+        } catch (IOException e) {
+            System.err.println("error: failed to delete commit log. " + e.getMessage());
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private record Entry(Message message, long offset) {
+    }
+}
@@ -0,0 +1,215 @@
+package dslab.broker;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Single-threaded selector loop serving any number of non-blocking client connections.
+ * The broker runs a small fixed number of these and spreads accepted connections across them.
+ */
+class EventLoop implements Runnable {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Selector selector;
+    private final Function<ClientChannel, BrokerClientHandler> handlerFactory;
+    private final Queue<SocketChannel> pendingRegistrations = new ConcurrentLinkedQueue<>();
+    private final Queue<NioClientChannel> pendingFlushes = new ConcurrentLinkedQueue<>();
+    private final Queue<NioClientChannel> pendingResumes = new ConcurrentLinkedQueue<>();
+
+    // connections that stopped reading because of a full queue, only ever touched by the loop thread
+    private final Set<NioClientChannel> paused = new HashSet<>();
+
+    // shared by all connections of this loop, only ever touched by the loop thread
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+    private volatile Thread thread;
+    private volatile boolean running = true;
+
+    EventLoop(Function<ClientChannel, BrokerClientHandler> handlerFactory) throws IOException {
+        this.selector = Selector.open();
+        this.handlerFactory = handlerFactory;
+    }
+
+    void register(SocketChannel channel) {
+        this.pendingRegistrations.add(channel);
+        this.selector.wakeup();
+    }
+
+    void requestFlush(NioClientChannel channel) {
+        this.pendingFlushes.add(channel);
+        this.selector.wakeup();
+    }
+
+    void requestResume(NioClientChannel channel) {
+        this.pendingResumes.add(channel);
+        this.selector.wakeup();
+    }
+
+    /**
+     * Tracks a paused channel, so that it resumes once its pause timed out; loop thread only.
+     */
+    void paused(NioClientChannel channel) {
+        this.paused.add(channel);
+    }
+
+    boolean inEventLoop() {
+        return Thread.currentThread() == this.thread;
+    }
+
+    ByteBuffer readBuffer() {
+        return this.readBuffer;
+    }
+
+    @Override
+    public void run() {
+        this.thread = Thread.currentThread();
+
+        while (this.running) {
+            try {
+                this.select();
+            } catch (IOException e) {
+                System.err.println("error: event loop failed. " + e.getMessage());
+                continue;
+            }
+            this.registerPending();
+            this.resumePaused();
+            this.flushPending();
+            this.processSelectedKeys();
+        }
+
+        this.closeAll();
+    }
+
+    /**
+     * Waits for ready keys, but no longer than until the earliest pause times out.
+     */
+    private void select() throws IOException {
+        if (this.paused.isEmpty()) {
+            this.selector.select();
+            return;
+        }
+
+        long now = System.nanoTime();
+        long wait = Long.MAX_VALUE;
+        for (NioClientChannel channel : this.paused)
+            wait = Math.min(wait, channel.pausedUntil() - now);
+        if (wait <= 0)
+            this.selector.selectNow();
+        else
+            this.selector.select(TimeUnit.NANOSECONDS.toMillis(wait) + 1);
+    }
+
+    private void resumePaused() {
+        NioClientChannel channel;
+        while ((channel = this.pendingResumes.poll()) != null)
+            this.guard(channel, channel::resumeReading);
+
+        if (this.paused.isEmpty())
+            return;
+        long now = System.nanoTime();
+        for (NioClientChannel pausedChannel : List.copyOf(this.paused)) {
+            if (pausedChannel.isPaused() && now - pausedChannel.pausedUntil() >= 0)
+                this.guard(pausedChannel, pausedChannel::resumeReading);
+        }
+        this.paused.removeIf(pausedChannel -> !pausedChannel.isPaused());
+    }
+
+    private void registerPending() {
+        SocketChannel socketChannel;
+        while ((socketChannel = this.pendingRegistrations.poll()) != null) {
+            try {
+                socketChannel.configureBlocking(false);
+                SelectionKey key = socketChannel.register(this.selector, SelectionKey.OP_READ);
+                NioClientChannel channel = new NioClientChannel(this, socketChannel, key);
+                BrokerClientHandler handler = this.handlerFactory.apply(channel);
+                channel.attach(handler);
+                key.attach(channel);
+                this.guard(channel, () -> {
+                    handler.onConnect();
+                    channel.flushOutbound();
+                });
+            } catch (IOException | RuntimeException e) {
+                System.err.println("error: failed to register client connection. " + e.getMessage());
+                close(socketChannel);
+            }
+        }
+    }
+
+    private void flushPending() {
+        NioClientChannel channel;
+        while ((channel = this.pendingFlushes.poll()) != null)
+            this.guard(channel, channel::flushOutbound);
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+
+            NioClientChannel channel = (NioClientChannel) key.attachment();
+            if (channel == null)
+                continue;
+            this.guard(channel, () -> {
+                if (key.isValid() && key.isReadable())
+                    channel.onReadable();
+                if (key.isValid() && key.isWritable())
+                    channel.flushOutbound();
+            });
+        }
+    }
+
+    /**
+     * Runs work for a single connection. Whatever goes wrong, e.g. a handler failing or a key cancelled under it,
+     * closes that connection only; the loop keeps serving all others.
+     */
+    private void guard(NioClientChannel channel, Runnable work) {
+        try {
+            work.run();
+        } catch (RuntimeException e) {
+            System.err.println("error: client connection failed, closing it. " + e);
+            try {
+                channel.onDisconnect();
+            } catch (RuntimeException closeFailure) {
+                System.err.println("error: failed to close client connection. " + closeFailure);
+            }
+        }
+    }
+
+    private static void close(SocketChannel socketChannel) {
+        try {
+            socketChannel.close();
+        } catch (IOException e) {
+            System.err.println("error: failed to close client channel. " + e.getMessage());
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : this.selector.keys()) {
+            if (key.attachment() instanceof NioClientChannel channel)
+                this.guard(channel, channel::onDisconnect);
+        }
+        try {
+            this.selector.close();
+        } catch (IOException e) {
+            System.err.println("error: failed to close selector. " + e.getMessage());
+        }
+    }
+
+    void shutdown() {
+        this.running = false;
+        this.selector.wakeup();
+    }
+}
@@ -0,0 +1,66 @@
+package dslab.broker;
+
+import java.util.List;
+
+public interface Exchange {
+
+    void bind(NamedQueue queue, String routingKey);
+
+    /**
+     * Returns the form a binding key is bound, unbound and journaled under. Exchanges whose keys can be written in
+     * several equivalent ways return one canonical form.
+     *
+     * @throws IllegalArgumentException if the key is not valid for this exchange type
+     */
+    default String bindingKey(String key) {
+        return key;
+    }
+
+    /**
+     * Removes the binding of the queue with the given key.
+     *
+     * @return whether the queue was bound with the key
+     */
+    boolean unbind(NamedQueue queue, String routingKey);
+
+    /**
+     * Removes all bindings of the queue, e.g. because it was deleted.
+     */
+    void unbind(NamedQueue queue);
+
+    /**
+     * Removes all bindings, e.g. because the exchange was deleted.
+     */
+    void clear();
+
+    void publish(String routingKey, Message message);
+
+    /**
+     * Publishes all messages with the same routing key. Implementations resolve the target queues once for the
+     * whole batch.
+     */
+    default void publishAll(String routingKey, List<Message> messages) {
+        for (Message message : messages)
+            this.publish(routingKey, message);
+    }
+
+    String getName();
+
+    String getType();
+
+    /**
+     * Creates a named exchange of one of the declarable types {@code direct}, {@code fanout}, {@code topic} or
+     * {@code headers}.
+     *
+     * @throws IllegalArgumentException for any other type
+     */
+    static Exchange of(String type, String name) {
+        return switch (type) {
+            case "direct" -> new DirectExchange(name);
+            case "fanout" -> new FanoutExchange(name);
+            case "topic" -> new TopicExchange(name);
+            case "headers" -> new HeadersExchange(name);
+            default -> throw new IllegalArgumentException("unknown exchange type: " + type);
+        };
+    }
+}
@@ -1,27 +1,98 @@
 package dslab.broker;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+/**
+ * Exchange delivering every message to all bound queues, regardless of the routing key.
+ * <p>
+ * The bound queues are kept as an array that is replaced as a whole on every bind, so publishing is a plain indexed
+ * loop over an immutable snapshot, without locking or traversing a hash table. Binds copy the array, which is cheap
+ * next to how often a fanout exchange publishes. Unbinding moves the last queue into the freed slot, so the snapshot
+ * never holds more than the bound queues.
+ */
 class FanoutExchange implements Exchange {
 
+    private static final NamedQueue[] NO_QUEUES = new NamedQueue[0];
+
     private final String name;
     private final String type;
-    private final ConcurrentHashMap<String, NamedQueue> qs;
+    private volatile NamedQueue[] queues = NO_QUEUES;
+
+    // queue name -> index in the snapshot, only used by binds and unbinds, guarded by this
+    private final Map<String, Integer> positions = new HashMap<>();
 
     public FanoutExchange(String name) {
         this.name = name;
         this.type = "fanout";
-        this.qs = new ConcurrentHashMap<>();
     }
 
     @Override
-    public void bind(NamedQueue queue, String routingKey) {
-        this.qs.put(queue.getName(), queue);
+    public synchronized void bind(NamedQueue queue, String routingKey) {
+        NamedQueue[] queues = this.queues;
+        Integer position = this.positions.putIfAbsent(queue.getName(), queues.length);
+        if (position == null) {
+            queues = Arrays.copyOf(queues, queues.length + 1);
+            queues[queues.length - 1] = queue;
+        } else if (queues[position] != queue) {
+            // a queue declared again under the name of a deleted one takes its place
+            queues = queues.clone();
+            queues[position] = queue;
+        } else {
+            return;
+        }
+        this.queues = queues;
+    }
+
+    /**
+     * Fanout bindings ignore the key, the queue is unbound whatever key it was bound with.
+     */
+    @Override
+    public boolean unbind(NamedQueue queue, String routingKey) {
+        return this.remove(queue);
+    }
+
+    @Override
+    public void unbind(NamedQueue queue) {
+        this.remove(queue);
+    }
+
+    private synchronized boolean remove(NamedQueue queue) {
+        NamedQueue[] queues = this.queues;
+        Integer position = this.positions.get(queue.getName());
+        if (position == null || queues[position] != queue)
+            return false;
+
+        // the last queue takes the place of the removed one
+        NamedQueue last = queues[queues.length - 1];
+        NamedQueue[] remaining = Arrays.copyOf(queues, queues.length - 1);
+        if (position < remaining.length) {
+            remaining[position] = last;
+            this.positions.put(last.getName(), position);
+        }
+        this.positions.remove(queue.getName());
+        this.queues = remaining;
+        return true;
+    }
+
+    @Override
+    public synchronized void clear() {
+        this.positions.clear();
+        this.queues = NO_QUEUES;
+    }
+
+    @Override
+    public void publish(String routingKey, Message message) {
+        for (NamedQueue queue : this.queues)
+            queue.enqueue(message);
     }
 
     @Override
-    public void publish(String routingKey, String message) {
-        this.qs.forEach((key, value) -> value.enqueue(message));
+    public void publishAll(String routingKey, List<Message> messages) {
+        for (NamedQueue queue : this.queues)
+            queue.enqueueAll(messages);
     }
 
     @Override
@@ -0,0 +1,220 @@
+package dslab.broker;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import dslab.config.Durability;
+
+/**
+ * Single writer stage for all durable queues of a broker.
+ * <p>
+ * Publishing threads only hand their records over; the writer thread appends whole batches to the commit logs and,
+ * with {@link Durability#FSYNC}, forces every log touched by a batch once. A batch is closed after
+ * {@code maxBatchBytes} or once {@code commitIntervalNanos} passed since its first record, whichever comes first.
+ * <p>
+ * Every record gets a ticket from a sequence. Once a batch was written with the configured durability, all tickets up
+ * to its last one are durable, so a publisher only needs to remember the last ticket it got to know when its
+ * {@code ok} may be released, see {@link #threadTicket()}.
+ */
+class GroupCommitter implements Runnable {
+
+    private final Durability durability;
+    private final long commitIntervalNanos;
+    private final int maxBatchBytes;
+    private final BlockingQueue<Record> records = new LinkedBlockingQueue<>();
+    private final ReentrantLock submitLock = new ReentrantLock();
+    private final ReentrantLock durableLock = new ReentrantLock();
+    private final Condition durableAdvanced = this.durableLock.newCondition();
+    private final Queue<Callback> callbacks = new ConcurrentLinkedQueue<>();
+    // only the thread holding this removes callbacks, so the head it checked is the one it polls
+    private final ReentrantLock callbackLock = new ReentrantLock();
+    private final ThreadLocal<long[]> lastTicket = ThreadLocal.withInitial(() -> new long[1]);
+    private final Thread thread;
+    private long nextTicket = 1;
+    private volatile long durableTicket;
+    private volatile boolean running = true;
+
+    GroupCommitter(Durability durability, long commitIntervalNanos, int maxBatchBytes, ThreadFactory threadFactory) {
+        this.durability = durability;
+        this.commitIntervalNanos = commitIntervalNanos;
+        this.maxBatchBytes = maxBatchBytes;
+        this.thread = threadFactory.newThread(this);
+    }
+
+    void start() {
+        this.thread.start();
+    }
+
+    /**
+     * Whether publishers have to wait for their records before answering, i.e. the durability is not
+     * {@link Durability#NONE}.
+     */
+    boolean confirmsPublishes() {
+        return this.durability != Durability.NONE;
+    }
+
+    void submit(DurableMessageBuffer buffer, List<Message> messages) {
+        this.submitLock.lock();
+        try {
+            long ticket = this.nextTicket++;
+            this.records.add(new Record(buffer, messages, ticket));
+            this.lastTicket.get()[0] = ticket;
+        } finally {
+            this.submitLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the last ticket handed out to the calling thread, 0 if there was none. Tickets only grow, so comparing
+     * the values before and after a publish tells whether it reached a durable queue.
+     */
+    long threadTicket() {
+        return this.lastTicket.get()[0];
+    }
+
+    boolean isDurable(long ticket) {
+        return ticket <= this.durableTicket;
+    }
+
+    void awaitDurable(long ticket) throws InterruptedException {
+        if (this.isDurable(ticket))
+            return;
+
+        this.durableLock.lockInterruptibly();
+        try {
+            while (!this.isDurable(ticket) && this.running)
+                this.durableAdvanced.await();
+        } finally {
+            this.durableLock.unlock();
+        }
+    }
+
+    /**
+     * Runs the action on the writer thread once the ticket is durable, or right away if it already is.
+     * <p>
+     * Callbacks are queued about in ticket order, as they are registered right after the submit. One queued behind a
+     * callback for a later ticket runs together with that one, i.e. at most a batch later.
+     */
+    void whenDurable(long ticket, Runnable action) {
+        this.callbacks.add(new Callback(ticket, action));
+        if (this.isDurable(ticket))
+            this.runCallbacks();
+    }
+
+    void shutdown() {
+        this.running = false;
+        this.thread.interrupt();
+        try {
+            this.thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        List<Record> batch = new ArrayList<>();
+        try {
+            while (this.running) {
+                this.collectBatch(batch);
+                this.write(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // write whatever was submitted before the shutdown
+            batch.clear();
+            this.records.drainTo(batch);
+            this.write(batch);
+            this.signalWaiters();
+        }
+    }
+
+    private void collectBatch(List<Record> batch) throws InterruptedException {
+        Record record = this.records.take();
+        batch.add(record);
+
+        int bytes = record.size();
+        long deadline = System.nanoTime() + this.commitIntervalNanos;
+        while (bytes < this.maxBatchBytes) {
+            record = this.records.poll();
+            if (record == null && this.commitIntervalNanos > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining > 0)
+                    record = this.records.poll(remaining, TimeUnit.NANOSECONDS);
+            }
+            if (record == null)
+                break;
+
+            batch.add(record);
+            bytes += record.size();
+        }
+    }
+
+    private void write(List<Record> batch) {
+        if (batch.isEmpty())
+            return;
+
+        Map<DurableMessageBuffer, Boolean> touched = new IdentityHashMap<>();
+        for (Record record : batch) {
+            record.buffer().append(record.messages());
+            touched.put(record.buffer(), Boolean.TRUE);
+        }
+        if (this.durability == Durability.FSYNC)
+            touched.keySet().forEach(DurableMessageBuffer::force);
+
+        this.durableTicket = batch.get(batch.size() - 1).ticket();
+        batch.clear();
+        this.signalWaiters();
+        this.runCallbacks();
+    }
+
+    private void signalWaiters() {
+        this.durableLock.lock();
+        try {
+            this.durableAdvanced.signalAll();
+        } finally {
+            this.durableLock.unlock();
+        }
+    }
+
+    private void runCallbacks() {
+        Callback callback;
+        while ((callback = this.pollDurableCallback()) != null)
+            callback.action().run();
+    }
+
+    private Callback pollDurableCallback() {
+        this.callbackLock.lock();
+        try {
+            Callback head = this.callbacks.peek();
+            if (head == null || !this.isDurable(head.ticket()))
+                return null;
+            return this.callbacks.poll();
+        } finally {
+            this.callbackLock.unlock();
+        }
+    }
+
+    private record Record(DurableMessageBuffer buffer, List<Message> messages, long ticket) {
+        int size() {
+            int size = 0;
+            for (Message message : this.messages)
+                size += message.size();
+            return size;
+        }
+    }
+
+    private record Callback(long ticket, Runnable action) {
+    }
+}
@@ -0,0 +1,95 @@
+package dslab.broker;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Exchange routing on message headers instead of a single key.
+ * <p>
+ * A publish's routing key is the message's headers as comma separated {@code name=value} pairs, e.g.
+ * {@code format=pdf,type=report}. A queue is bound with a {@link HeadersPattern} and receives the messages carrying
+ * all, or any, of the pattern's headers; further headers of the message do not matter.
+ * <p>
+ * Publishing resolves through an immutable {@link HeadersIndex} that is replaced as a whole on every bind and unbind,
+ * so routing needs no locking and its cost follows the number of headers of the message rather than the number of
+ * bindings.
+ */
+class HeadersExchange implements Exchange {
+
+    private final String name;
+    private final String type;
+
+    // guarded by this, the index is compiled from it
+    private final Set<Binding> bindings = new LinkedHashSet<>();
+    private volatile HeadersIndex index = HeadersIndex.compile(List.of());
+
+    public HeadersExchange(String name) {
+        this.name = name;
+        this.type = "headers";
+    }
+
+    /**
+     * Returns the canonical form of the pattern, so that it is journaled and unbound under one key however its
+     * headers were ordered.
+     */
+    @Override
+    public String bindingKey(String key) {
+        return HeadersPattern.parse(key).toString();
+    }
+
+    @Override
+    public synchronized void bind(NamedQueue queue, String routingKey) {
+        if (this.bindings.add(new Binding(queue, HeadersPattern.parse(routingKey))))
+            this.index = HeadersIndex.compile(this.bindings);
+    }
+
+    @Override
+    public synchronized boolean unbind(NamedQueue queue, String routingKey) {
+        if (!this.bindings.remove(new Binding(queue, HeadersPattern.parse(routingKey))))
+            return false;
+        this.index = HeadersIndex.compile(this.bindings);
+        return true;
+    }
+
+    @Override
+    public synchronized void unbind(NamedQueue queue) {
+        if (this.bindings.removeIf(binding -> binding.queue() == queue))
+            this.index = HeadersIndex.compile(this.bindings);
+    }
+
+    @Override
+    public synchronized void clear() {
+        this.bindings.clear();
+        this.index = HeadersIndex.compile(this.bindings);
+    }
+
+    @Override
+    public void publish(String routingKey, Message message) {
+        for (NamedQueue queue : this.route(routingKey))
+            queue.enqueue(message);
+    }
+
+    @Override
+    public void publishAll(String routingKey, List<Message> messages) {
+        for (NamedQueue queue : this.route(routingKey))
+            queue.enqueueAll(messages);
+    }
+
+    private NamedQueue[] route(String routingKey) {
+        return this.index.resolve(routingKey.split(","));
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public String getType() {
+        return this.type;
+    }
+
+    record Binding(NamedQueue queue, HeadersPattern pattern) {
+    }
+}
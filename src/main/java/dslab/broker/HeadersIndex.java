@@ -0,0 +1,169 @@
+package dslab.broker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable inverted index compiled from the bindings of a {@link HeadersExchange}.
+ * <p>
+ * Every binding with headers gets a dense id and the number of its headers a message has to carry: all of them for
+ * {@code x-match=all}, one for {@code x-match=any}. Each {@code name=value} header maps to the ids of the bindings
+ * naming it. Matching looks up the message's headers only and counts the hits per binding in scratch arrays borrowed
+ * from a {@link ScratchPool}; a binding matches when its count reaches the required number. The work is proportional
+ * to the message's headers and the bindings sharing them, bindings the message has nothing in common with are never
+ * touched.
+ * <p>
+ * Like {@link TopicMatcher}, every distinct queue gets a dense index and is collected once per message however many of
+ * its bindings match, so usually only the resulting array is allocated.
+ */
+final class HeadersIndex {
+
+    private static final NamedQueue[] NO_QUEUES = new NamedQueue[0];
+    private static final ScratchPool<Scratch> SCRATCH = new ScratchPool<>(Scratch::new);
+
+    // name=value -> ids of the bindings naming the header
+    private final Map<String, int[]> postings;
+    private final int[] required;
+    private final int[] queueOf;
+    // queues bound with x-match=all and no headers, which receive every message
+    private final int[] unconditional;
+    private final NamedQueue[] queueTable;
+
+    private HeadersIndex(Map<String, int[]> postings, int[] required, int[] queueOf, int[] unconditional,
+                         NamedQueue[] queueTable) {
+        this.postings = postings;
+        this.required = required;
+        this.queueOf = queueOf;
+        this.unconditional = unconditional;
+        this.queueTable = queueTable;
+    }
+
+    static HeadersIndex compile(Collection<HeadersExchange.Binding> bindings) {
+        Map<NamedQueue, Integer> queueIndexes = new IdentityHashMap<>();
+        Map<String, List<Integer>> postings = new HashMap<>();
+        Set<Integer> unconditional = new LinkedHashSet<>();
+        int[] required = new int[bindings.size()];
+        int[] queueOf = new int[bindings.size()];
+        int ids = 0;
+
+        for (HeadersExchange.Binding binding : bindings) {
+            int queue = queueIndexes.computeIfAbsent(binding.queue(), q -> queueIndexes.size());
+            HeadersPattern pattern = binding.pattern();
+            if (pattern.headers().isEmpty()) {
+                if (!pattern.any())
+                    unconditional.add(queue);
+                continue;
+            }
+
+            int id = ids++;
+            required[id] = pattern.any() ? 1 : pattern.headers().size();
+            queueOf[id] = queue;
+            for (String header : pattern.headers())
+                postings.computeIfAbsent(header, h -> new ArrayList<>()).add(id);
+        }
+
+        Map<String, int[]> compiled = new HashMap<>();
+        for (Map.Entry<String, List<Integer>> posting : postings.entrySet())
+            compiled.put(posting.getKey(), posting.getValue().stream().mapToInt(Integer::intValue).toArray());
+
+        NamedQueue[] queueTable = new NamedQueue[queueIndexes.size()];
+        queueIndexes.forEach((queue, index) -> queueTable[index] = queue);
+        return new HeadersIndex(compiled, Arrays.copyOf(required, ids), Arrays.copyOf(queueOf, ids),
+                unconditional.stream().mapToInt(Integer::intValue).toArray(), queueTable);
+    }
+
+    /**
+     * Returns the distinct queues with at least one binding matched by the given {@code name=value} headers.
+     */
+    NamedQueue[] resolve(String[] headers) {
+        if (this.queueTable.length == 0)
+            return NO_QUEUES;
+
+        Scratch scratch = SCRATCH.borrow();
+        try {
+            return this.resolve(headers, scratch);
+        } finally {
+            SCRATCH.release(scratch);
+        }
+    }
+
+    private NamedQueue[] resolve(String[] headers, Scratch scratch) {
+        scratch.ensureCapacity(this.required.length, this.queueTable.length);
+        scratch.nextGeneration();
+
+        int count = 0;
+        for (int queue : this.unconditional)
+            count = this.collect(queue, count, scratch);
+
+        for (int i = 0; i < headers.length; i++) {
+            int[] ids = this.postings.get(headers[i]);
+            // a header repeated in the message must not count twice towards x-match=all
+            if (ids == null || isRepeated(headers, i))
+                continue;
+
+            for (int id : ids) {
+                int hits = scratch.mark[id] == scratch.generation ? scratch.hits[id] + 1 : 1;
+                scratch.mark[id] = scratch.generation;
+                scratch.hits[id] = hits;
+                if (hits == this.required[id])
+                    count = this.collect(this.queueOf[id], count, scratch);
+            }
+        }
+        if (count == 0)
+            return NO_QUEUES;
+
+        NamedQueue[] result = new NamedQueue[count];
+        for (int i = 0; i < count; i++)
+            result[i] = this.queueTable[scratch.collected[i]];
+        return result;
+    }
+
+    private int collect(int queue, int count, Scratch scratch) {
+        if (scratch.queueMark[queue] == scratch.generation)
+            return count;
+        scratch.queueMark[queue] = scratch.generation;
+        scratch.collected[count] = queue;
+        return count + 1;
+    }
+
+    private static boolean isRepeated(String[] headers, int index) {
+        for (int i = 0; i < index; i++) {
+            if (headers[i].equals(headers[index]))
+                return true;
+        }
+        return false;
+    }
+
+    private static final class Scratch {
+        private int[] mark = new int[0];
+        private int[] hits = new int[0];
+        private int[] queueMark = new int[0];
+        private int[] collected = new int[0];
+        private int generation;
+
+        void ensureCapacity(int bindings, int queues) {
+            if (this.mark.length < bindings || this.queueMark.length < queues) {
+                this.mark = new int[Math.max(this.mark.length, bindings)];
+                this.hits = new int[this.mark.length];
+                this.queueMark = new int[Math.max(this.queueMark.length, queues)];
+                this.collected = new int[this.queueMark.length];
+                this.generation = 0;
+            }
+        }
+
+        void nextGeneration() {
+            if (++this.generation == Integer.MAX_VALUE) {
+                Arrays.fill(this.mark, 0);
+                Arrays.fill(this.queueMark, 0);
+                this.generation = 1;
+            }
+        }
+    }
+}
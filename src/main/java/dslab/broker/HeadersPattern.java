@@ -0,0 +1,64 @@
+package dslab.broker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Binding key of a {@link HeadersExchange}, e.g. {@code x-match=any,format=pdf,type=report}: the {@code name=value}
+ * headers a message is matched against and whether it has to carry all of them or any one. {@code x-match} defaults
+ * to {@code all}; a pattern without headers matches every message with {@code all} and none with {@code any}.
+ * <p>
+ * The headers are kept sorted by name, so keys listing the same headers in a different order are equal and have the
+ * same {@link #toString() canonical form}.
+ *
+ * @param any     whether a single matching header suffices
+ * @param headers the {@code name=value} headers, sorted by name, with distinct names
+ */
+record HeadersPattern(boolean any, List<String> headers) {
+
+    static final String MATCH = "x-match";
+
+    /**
+     * @throws IllegalArgumentException if a part is not {@code name=value}, a name is repeated or {@code x-match} is
+     *                                  neither {@code all} nor {@code any}
+     */
+    static HeadersPattern parse(String key) {
+        boolean any = false;
+        boolean matchGiven = false;
+        Map<String, String> headers = new TreeMap<>();
+        for (String part : key.split(",")) {
+            int separator = part.indexOf('=');
+            if (separator <= 0)
+                throw new IllegalArgumentException("headers binding parts must be name=value: " + part);
+
+            String name = part.substring(0, separator);
+            String value = part.substring(separator + 1);
+            if (name.equals(MATCH)) {
+                if (matchGiven)
+                    throw new IllegalArgumentException("x-match given more than once");
+                any = switch (value) {
+                    case "all" -> false;
+                    case "any" -> true;
+                    default -> throw new IllegalArgumentException("x-match must be all or any: " + value);
+                };
+                matchGiven = true;
+            } else if (headers.putIfAbsent(name, value) != null) {
+                throw new IllegalArgumentException("header given more than once: " + name);
+            }
+        }
+
+        List<String> sorted = new ArrayList<>(headers.size());
+        headers.forEach((name, value) -> sorted.add(name + "=" + value));
+        return new HeadersPattern(any, List.copyOf(sorted));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder key = new StringBuilder(MATCH).append(this.any ? "=any" : "=all");
+        for (String header : this.headers)
+            key.append(',').append(header);
+        return key.toString();
+    }
+}
@@ -0,0 +1,168 @@
+package dslab.broker;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Buffer of a lazy queue, whose heap footprint does not depend on its depth.
+ * <p>
+ * Only a head window, which consumers take from, and a tail window, which publishers add to, are kept in memory.
+ * Whenever the tail window is full it is paged out to a {@link SpillLog} as a whole, and once the head window runs
+ * half empty the oldest paged out messages are read back ahead of the consumer. Messages are kept in order: head,
+ * then the spill log, then the tail.
+ * <p>
+ * The spill log only relieves the heap, its messages do not survive a restart.
+ */
+class LazyMessageBuffer implements MessageBuffer {
+
+    static final int DEFAULT_WINDOW = 1024;
+
+    private final SpillLog spill;
+    private final int window;
+    private final ArrayDeque<Message> head = new ArrayDeque<>();
+    private final ArrayDeque<Message> tail = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = this.lock.newCondition();
+
+    LazyMessageBuffer(Path directory, int segmentSize, int window) throws IOException {
+        this.spill = new SpillLog(directory, segmentSize);
+        this.window = window;
+    }
+
+    @Override
+    public void put(Message message) {
+        this.lock.lock();
+        try {
+            this.add(message);
+            this.notEmpty.signal();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public void putAll(List<Message> messages) {
+        this.lock.lock();
+        try {
+            for (Message message : messages)
+                this.add(message);
+            this.notEmpty.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void add(Message message) {
+        // the head may only grow while nothing is queued behind it
+        if (this.tail.isEmpty() && this.spill.isEmpty() && this.head.size() < this.window) {
+            this.head.add(message);
+            return;
+        }
+
+        this.tail.add(message);
+        if (this.tail.size() >= this.window)
+            this.pageOut();
+    }
+
+    private void pageOut() {
+        try {
+            while (!this.tail.isEmpty()) {
+                this.spill.append(this.tail.peek());
+                this.tail.poll();
+            }
+        } catch (IOException e) {
+            // the tail just keeps growing on the heap, the order of messages is unaffected
+            System.err.println("error: failed to page out lazy queue. " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Message take() throws InterruptedException {
+        this.lock.lockInterruptibly();
+        try {
+            while (this.isEmpty())
+                this.notEmpty.await();
+            return this.consume();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public Message poll() {
+        this.lock.lock();
+        try {
+            return this.isEmpty() ? null : this.consume();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public Message poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        this.lock.lockInterruptibly();
+        try {
+            while (this.isEmpty()) {
+                if (remaining <= 0)
+                    return null;
+                remaining = this.notEmpty.awaitNanos(remaining);
+            }
+            return this.consume();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private boolean isEmpty() {
+        return this.head.isEmpty() && this.spill.isEmpty() && this.tail.isEmpty();
+    }
+
+    private Message consume() {
+        if (this.head.size() <= this.window / 2)
+            this.readAhead();
+        return this.head.poll();
+    }
+
+    /**
+     * Refills the head window from the spill log, or takes over the tail once nothing is paged out anymore.
+     */
+    private void readAhead() {
+        if (!this.spill.isEmpty()) {
+            try {
+                this.spill.read(this.window - this.head.size(), this.head);
+            } catch (IOException e) {
+                System.err.println("error: failed to read lazy queue, dropping its paged out messages. "
+                        + e.getMessage());
+                this.closeSpill();
+            }
+        }
+        if (this.spill.isEmpty()) {
+            this.head.addAll(this.tail);
+            this.tail.clear();
+        }
+    }
+
+    private void closeSpill() {
+        try {
+            this.spill.close();
+        } catch (IOException e) {
+            System.err.println("error: failed to delete lazy queue files. " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        this.lock.lock();
+        try {
+            this.closeSpill();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+}
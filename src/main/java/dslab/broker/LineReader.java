@@ -0,0 +1,97 @@
+package dslab.broker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Splits a blocking input stream into lines without decoding them, so the handler can take message payloads as the
+ * bytes the client sent. Lines end with {@code \n}, an optional preceding {@code \r} is dropped.
+ * <p>
+ * A line read by {@link #readLine()} stays in {@link #array()} only until the next call. Lines longer than
+ * {@link #MAX_LINE_LENGTH} are rejected, so a client cannot make the buffer grow without bound.
+ */
+class LineReader implements Closeable {
+
+    /**
+     * The longest line a client may send, shared by both transports.
+     */
+    static final int MAX_LINE_LENGTH = 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final InputStream in;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private int lineStart;
+
+    LineReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the next line, blocking until it is complete.
+     *
+     * @return the length of the line starting at {@link #lineStart()}, or -1 at the end of the stream
+     * @throws IOException if reading failed, or the line exceeds {@link #MAX_LINE_LENGTH}
+     */
+    int readLine() throws IOException {
+        int scan = this.position;
+        while (true) {
+            for (; scan < this.limit; scan++) {
+                if (this.buffer[scan] != '\n')
+                    continue;
+
+                this.lineStart = this.position;
+                this.position = scan + 1;
+                int end = scan > this.lineStart && this.buffer[scan - 1] == '\r' ? scan - 1 : scan;
+                return end - this.lineStart;
+            }
+
+            // keep the incomplete line and make room behind it
+            if (this.position > 0) {
+                System.arraycopy(this.buffer, this.position, this.buffer, 0, this.limit - this.position);
+                scan -= this.position;
+                this.limit -= this.position;
+                this.position = 0;
+            }
+            if (this.limit > MAX_LINE_LENGTH)
+                throw new IOException("client line exceeds " + MAX_LINE_LENGTH + " bytes");
+            if (this.limit == this.buffer.length)
+                this.buffer = Arrays.copyOf(this.buffer, Math.min(2 * this.buffer.length, MAX_LINE_LENGTH + 1));
+
+            int read = this.in.read(this.buffer, this.limit, this.buffer.length - this.limit);
+            if (read < 0) {
+                // like BufferedReader, an unterminated last line still counts
+                if (this.limit == this.position)
+                    return -1;
+                this.lineStart = this.position;
+                this.position = this.limit;
+                return this.limit - this.lineStart;
+            }
+            this.limit += read;
+        }
+    }
+
+    byte[] array() {
+        return this.buffer;
+    }
+
+    int lineStart() {
+        return this.lineStart;
+    }
+
+    /**
+     * Whether input is available without blocking.
+     */
+    boolean ready() throws IOException {
+        return this.position < this.limit || this.in.available() > 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+}
@@ -0,0 +1,39 @@
+package dslab.broker;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unbounded buffer allocating one node per message. This is the default storage of a {@link NamedQueue}.
+ */
+class LinkedMessageBuffer implements MessageBuffer {
+
+    private final BlockingQueue<Message> messages = new LinkedBlockingQueue<>();
+
+    @Override
+    public void put(Message message) {
+        this.messages.add(message);
+    }
+
+    @Override
+    public void putAll(List<Message> messages) {
+        this.messages.addAll(messages);
+    }
+
+    @Override
+    public Message take() throws InterruptedException {
+        return this.messages.take();
+    }
+
+    @Override
+    public Message poll() {
+        return this.messages.poll();
+    }
+
+    @Override
+    public Message poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.messages.poll(timeout, unit);
+    }
+}
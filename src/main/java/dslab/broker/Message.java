@@ -0,0 +1,155 @@
+package dslab.broker;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A published message as it is routed to queues and handed to subscriptions. The same instance, and with it the same
+ * payload bytes, is shared by every queue a publish was routed to.
+ * <p>
+ * The payload is kept as the UTF-8 bytes read from the publisher, without the line terminator, and written to
+ * subscribers as is; the broker never decodes it. Payload arrays are never modified once a message was created.
+ * <p>
+ * A message published with a time to live carries a deadline on the {@link System#nanoTime()} scale. Expired
+ * messages are skipped instead of delivered; {@link #expire()} additionally drops the payload right away, so an
+ * expired message that is still waiting in a queue only holds on to this object.
+ * <p>
+ * A copy made for a single queue, see {@link #limitTtl(long)}, also tracks whether it still waits in that queue, so
+ * that either its expiry or the consumer taking it releases it from the queue, but not both.
+ * <p>
+ * The priority, from 0 to {@link #MAX_PRIORITY}, only matters to priority queues, see {@link PriorityMessageBuffer}.
+ */
+public final class Message {
+
+    public static final int MAX_PRIORITY = 9;
+
+    private static final long NO_DEADLINE = 0;
+    private static final VarHandle QUEUED;
+
+    static {
+        try {
+            QUEUED = MethodHandles.lookup().findVarHandle(Message.class, "queued", boolean.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile byte[] payload;
+    private volatile boolean queued;
+    private final long deadline;
+    private final int size;
+    private final byte priority;
+
+    public Message(byte[] payload) {
+        this(payload, NO_DEADLINE, 0);
+    }
+
+    public Message(byte[] payload, int priority) {
+        this(payload, NO_DEADLINE, priority);
+    }
+
+    /**
+     * Restores a message with the deadline of an earlier instance, see {@link #deadline()}.
+     */
+    Message(byte[] payload, long deadline) {
+        this(payload, deadline, 0);
+    }
+
+    private Message(byte[] payload, long deadline, int priority) {
+        if (priority < 0 || priority > MAX_PRIORITY)
+            throw new IllegalArgumentException("priority must be between 0 and " + MAX_PRIORITY);
+        this.payload = payload;
+        this.deadline = deadline;
+        this.size = payload.length;
+        this.priority = (byte) priority;
+    }
+
+    /**
+     * Creates a message expiring once {@code ttlNanos} passed.
+     */
+    public static Message withTtl(byte[] payload, long ttlNanos, int priority) {
+        return new Message(payload, deadlineAfter(ttlNanos), priority);
+    }
+
+    private static long deadlineAfter(long ttlNanos) {
+        // 0 marks messages without deadline, a deadline that happens to be 0 is off by a nanosecond
+        long deadline = System.nanoTime() + ttlNanos;
+        return deadline == NO_DEADLINE ? 1 : deadline;
+    }
+
+    /**
+     * Returns the payload, or {@code null} once the message expired. The array is shared and must not be modified.
+     */
+    public byte[] payload() {
+        return this.payload;
+    }
+
+    /**
+     * Size of the payload in bytes, as it is written to clients; still known after the payload was dropped.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public int priority() {
+        return this.priority;
+    }
+
+    public boolean hasDeadline() {
+        return this.deadline != NO_DEADLINE;
+    }
+
+    public long deadline() {
+        return this.deadline;
+    }
+
+    public boolean isExpired() {
+        return this.payload == null || (this.deadline != NO_DEADLINE && System.nanoTime() - this.deadline >= 0);
+    }
+
+    /**
+     * Returns a copy for a single queue, expiring after at most {@code ttlNanos}, or this message if it expired
+     * already. The copy counts as waiting in the queue.
+     */
+    Message limitTtl(long ttlNanos) {
+        long deadline = deadlineAfter(ttlNanos);
+        byte[] payload = this.payload;
+        if (payload == null)
+            return this;
+        if (this.hasDeadline() && this.deadline - deadline <= 0)
+            deadline = this.deadline;
+        Message limited = new Message(payload, deadline, this.priority);
+        limited.queued = true;
+        return limited;
+    }
+
+    /**
+     * Drops the payload; called once the deadline passed.
+     */
+    void expire() {
+        this.payload = null;
+    }
+
+    /**
+     * Drops the payload, returning whether the message was still waiting in its queue and thereby taken out of it.
+     */
+    boolean expireQueued() {
+        boolean queued = QUEUED.compareAndSet(this, true, false);
+        this.payload = null;
+        return queued;
+    }
+
+    /**
+     * Takes the message out of its queue for a consumer, unless its expiry did so first.
+     */
+    boolean dequeue() {
+        return QUEUED.compareAndSet(this, true, false);
+    }
+
+    /**
+     * Marks a message handed back by a consumer as waiting in its queue again.
+     */
+    void enqueue() {
+        this.queued = true;
+    }
+}
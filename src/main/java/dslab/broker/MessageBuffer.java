@@ -0,0 +1,54 @@
+package dslab.broker;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storage behind a {@link NamedQueue}. Any number of publishers may call {@link #put(Message)} concurrently.
+ */
+public interface MessageBuffer {
+
+    /**
+     * Stores the message. A buffer with a fixed capacity may reject it instead, counting it through
+     * {@link BoundedMessageBuffer#countRejections(int)}; of a batch passed to {@link #putAll(List)} it rejects the end.
+     */
+    void put(Message message);
+
+    default void putAll(List<Message> messages) {
+        for (Message message : messages)
+            this.put(message);
+    }
+
+    /**
+     * Returns messages that were taken but could not be delivered. Unlike publishes, these are never refused.
+     */
+    default void requeue(List<Message> messages) {
+        this.putAll(messages);
+    }
+
+    Message take() throws InterruptedException;
+
+    /**
+     * Returns the next message, or {@code null} if the buffer is empty.
+     */
+    Message poll();
+
+    /**
+     * Waits up to the given time for the next message, returning {@code null} if none arrived.
+     */
+    Message poll(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Releases resources held by the buffer, e.g. files of a durable queue.
+     */
+    default void close() {
+    }
+
+    /**
+     * Closes the buffer of a deleted queue, discarding its messages including any kept on disk, so that a queue
+     * declared later under the same name starts out empty.
+     */
+    default void delete() {
+        this.close();
+    }
+}
@@ -0,0 +1,145 @@
+package dslab.broker;
+
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+public class NamedQueue {
+
+    private final String name;
+    private final MessageBuffer messages;
+    private final Dispatcher dispatcher;
+    private final QueueOptions options;
+    private volatile long lastUsed = System.nanoTime();
+    private volatile boolean deleted;
+    private volatile Object owner;
+
+    public NamedQueue(String name) {
+        this(name, new LinkedMessageBuffer());
+    }
+
+    public NamedQueue(String name, MessageBuffer messages) {
+        this(name, messages, QueueOptions.DEFAULT);
+    }
+
+    public NamedQueue(String name, MessageBuffer messages, QueueOptions options) {
+        this.name = name;
+        this.messages = messages;
+        this.options = options;
+        this.dispatcher = new Dispatcher(messages);
+    }
+
+    public void enqueue(Message message) {
+        // exchanges may still hold on to a deleted queue
+        if (!this.deleted)
+            this.messages.put(message);
+    }
+
+    public void enqueueAll(List<Message> messages) {
+        if (!this.deleted)
+            this.messages.putAll(messages);
+    }
+
+    /**
+     * Returns messages a subscription took but did not deliver.
+     */
+    public void requeue(List<Message> messages) {
+        this.messages.requeue(messages);
+    }
+
+    public Message dequeue() throws InterruptedException {
+        return this.messages.take();
+    }
+
+    public Message poll() {
+        return this.messages.poll();
+    }
+
+    public Message poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.messages.poll(timeout, unit);
+    }
+
+    /**
+     * Adds a competing consumer; the queue's messages are distributed among all of its subscriptions.
+     */
+    public void subscribe(Subscription subscription, ThreadFactory threadFactory) {
+        this.touch();
+        this.dispatcher.add(subscription, threadFactory);
+    }
+
+    public void unsubscribe(Subscription subscription) {
+        this.dispatcher.remove(subscription);
+        this.touch();
+    }
+
+    /**
+     * Records a use of the queue by a client, which postpones its expiry.
+     */
+    public void touch() {
+        this.lastUsed = System.nanoTime();
+    }
+
+    /**
+     * Returns when the queue was last used on the {@link System#nanoTime()} scale, or {@link Long#MAX_VALUE} while
+     * it has subscriptions.
+     */
+    long lastUsed() {
+        return this.dispatcher.hasSubscriptions() ? Long.MAX_VALUE : this.lastUsed;
+    }
+
+    void onWindowOpened() {
+        this.dispatcher.onWindowOpened();
+    }
+
+    /**
+     * Stops dispatching to subscriptions; a message taken but not yet handed over is returned to the buffer.
+     */
+    public void shutdown() {
+        this.dispatcher.shutdown();
+    }
+
+    public void close() {
+        this.messages.close();
+    }
+
+    /**
+     * Stops the queue for good: later publishes are dropped and the buffer is deleted with its messages.
+     *
+     * @return whether the queue was deleted by this call, i.e. not before
+     */
+    synchronized boolean delete() {
+        if (this.deleted)
+            return false;
+        this.deleted = true;
+        this.shutdown();
+        this.messages.delete();
+        return true;
+    }
+
+    /**
+     * Makes the queue exclusive to the given connection.
+     */
+    void setOwner(Object owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Whether the connection may use the queue, i.e. the queue is not exclusive to another one.
+     */
+    boolean isAccessibleBy(Object connection) {
+        Object owner = this.owner;
+        return owner == null || owner == connection;
+    }
+
+    public boolean isDeleted() {
+        return this.deleted;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public QueueOptions getOptions() {
+        return this.options;
+    }
+}
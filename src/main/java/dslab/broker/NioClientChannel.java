@@ -0,0 +1,356 @@
+package dslab.broker;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-blocking client connection owned by an {@link EventLoop}.
+ * <p>
+ * Input is split into lines and pushed into the {@link BrokerClientHandler} on the loop thread. Output may be written
+ * from any thread; it is queued as encoded lines, which may be shared with other channels, and copied into the socket
+ * buffer by the loop thread only. Idle connections hold no buffers. The queued output itself is not bounded; writers
+ * that must not outrun the client, like subscriptions, wait for {@link #whenWritten(Runnable)} instead.
+ * <p>
+ * A full queue may {@link #pause pause} the connection: it stops reading, keeps the rest of the input read so far,
+ * and continues with it once resumed.
+ */
+class NioClientChannel implements ClientChannel, Backpressure {
+
+    private static final int WRITE_BUFFER_SIZE = 8 * 1024;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final EventLoop loop;
+    private final SocketChannel socketChannel;
+    private final SelectionKey key;
+    private final Queue<byte[]> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    // bytes of all lines queued so far, and the actions waiting for the socket to reach a given count of them
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final Queue<WrittenAction> writtenActions = new ConcurrentLinkedQueue<>();
+    private final Runnable resume;
+    private BrokerClientHandler handler;
+    private volatile boolean closing;
+
+    // state below is only accessed by the loop thread
+    private byte[] partialLine = EMPTY;
+    private int partialLength;
+    private ByteBuffer writeBuffer;
+    private long writtenBytes;
+    private boolean paused;
+    private long pausedUntil;
+    private byte[] pausedInput;
+
+    NioClientChannel(EventLoop loop, SocketChannel socketChannel, SelectionKey key) {
+        this.loop = loop;
+        this.socketChannel = socketChannel;
+        this.key = key;
+        this.resume = () -> loop.requestResume(this);
+    }
+
+    void attach(BrokerClientHandler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public void write(byte[] line) throws IOException {
+        if (this.closing || !this.socketChannel.isOpen())
+            throw new ClosedChannelException();
+
+        // counted first, so the socket never gets ahead of the count
+        this.queuedBytes.addAndGet(line.length + 1);
+        this.outbound.add(line);
+        this.scheduleFlush();
+    }
+
+    /**
+     * Runs the action on the loop thread once the socket took everything queued so far. Dropped if the connection
+     * closes first.
+     */
+    @Override
+    public void whenWritten(Runnable action) {
+        if (this.closing)
+            return;
+        this.writtenActions.add(new WrittenAction(this.queuedBytes.get(), action));
+        this.scheduleFlush();
+    }
+
+    /**
+     * Output is written by the loop once the handler consumed all input that was read, so responses to pipelined
+     * commands leave in a single write. Off the loop thread this schedules a flush.
+     */
+    @Override
+    public void flush() {
+        this.scheduleFlush();
+    }
+
+    @Override
+    public void close() {
+        this.closing = true;
+        this.scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        // the loop flushes on its own after handing input to the handler
+        if (this.loop.inEventLoop())
+            return;
+        if (this.flushRequested.compareAndSet(false, true))
+            this.loop.requestFlush(this);
+    }
+
+    void onReadable() {
+        // the key may have been selected before a queue paused the connection
+        if (this.paused)
+            return;
+
+        ByteBuffer buffer = this.loop.readBuffer();
+        buffer.clear();
+
+        int read;
+        try {
+            read = this.socketChannel.read(buffer);
+        } catch (IOException e) {
+            read = -1;
+        }
+
+        if (read < 0) {
+            this.onDisconnect();
+            return;
+        }
+
+        this.handleInput(buffer.array(), 0, read);
+    }
+
+    /**
+     * Hands the complete lines to the handler and keeps a trailing partial line. If a line paused the connection,
+     * the rest of the input is kept until it resumes.
+     */
+    private void handleInput(byte[] bytes, int from, int to) {
+        Backpressure.setCurrent(this);
+        try {
+            int start = from;
+            for (int i = from; i < to; i++) {
+                if (bytes[i] != '\n')
+                    continue;
+
+                if (!this.handleLine(bytes, start, i)) {
+                    this.closeOverLongLine();
+                    return;
+                }
+                start = i + 1;
+
+                if (!this.handler.isRunning())
+                    break;
+                if (this.paused) {
+                    this.pausedInput = Arrays.copyOfRange(bytes, start, to);
+                    break;
+                }
+            }
+
+            if (this.handler.isRunning() && !this.paused && !this.appendPartial(bytes, start, to - start)) {
+                this.closeOverLongLine();
+                return;
+            }
+        } finally {
+            Backpressure.setCurrent(null);
+        }
+
+        this.flushOutbound();
+    }
+
+    /**
+     * Stops reading; called by a full queue while this connection's input is handled, so on the loop thread.
+     */
+    @Override
+    public Runnable pause(long timeoutNanos) {
+        if (!this.paused) {
+            this.paused = true;
+            this.pausedUntil = System.nanoTime() + timeoutNanos;
+            this.updateInterest();
+            this.loop.paused(this);
+        }
+        return this.resume;
+    }
+
+    boolean isPaused() {
+        return this.paused && !this.closing;
+    }
+
+    long pausedUntil() {
+        return this.pausedUntil;
+    }
+
+    /**
+     * Handles the input kept while paused and reads again, unless that input paused the connection once more;
+     * loop thread only.
+     */
+    void resumeReading() {
+        if (!this.isPaused())
+            return;
+
+        this.paused = false;
+        byte[] input = this.pausedInput;
+        this.pausedInput = null;
+        if (input != null)
+            this.handleInput(input, 0, input.length);
+        this.updateInterest();
+    }
+
+    /**
+     * Hands the line ending before {@code end} to the handler, joined with the part buffered from earlier reads.
+     *
+     * @return false if the line, including the buffered part, exceeds {@link LineReader#MAX_LINE_LENGTH}; it is not
+     * handed to the handler then
+     */
+    private boolean handleLine(byte[] bytes, int start, int end) {
+        byte[] source = bytes;
+        int offset = start;
+        int length = end - start;
+
+        if (this.partialLength > 0) {
+            if (!this.appendPartial(bytes, start, length))
+                return false;
+            source = this.partialLine;
+            offset = 0;
+            length = this.partialLength;
+            this.partialLine = EMPTY;
+            this.partialLength = 0;
+        } else if (length > LineReader.MAX_LINE_LENGTH) {
+            return false;
+        }
+
+        if (length > 0 && source[offset + length - 1] == '\r')
+            length--;
+
+        this.handler.handleLine(source, offset, length);
+        return true;
+    }
+
+    private void closeOverLongLine() {
+        System.err.println("error: client line exceeds " + LineReader.MAX_LINE_LENGTH + " bytes, closing connection.");
+        this.onDisconnect();
+    }
+
+    private boolean appendPartial(byte[] bytes, int offset, int length) {
+        if (length == 0)
+            return true;
+        if (this.partialLength + length > LineReader.MAX_LINE_LENGTH)
+            return false;
+
+        if (this.partialLength + length > this.partialLine.length)
+            this.partialLine = Arrays.copyOf(this.partialLine,
+                    Math.max(this.partialLength + length, 2 * this.partialLine.length));
+        System.arraycopy(bytes, offset, this.partialLine, this.partialLength, length);
+        this.partialLength += length;
+        return true;
+    }
+
+    /**
+     * Writes queued output to the socket; loop thread only.
+     */
+    void flushOutbound() {
+        this.flushRequested.set(false);
+        if (!this.socketChannel.isOpen())
+            return;
+        if (this.writeBuffer == null && this.outbound.isEmpty() && !this.closing) {
+            this.runWrittenActions();
+            return;
+        }
+        // responses to publishes wait until these are durable, the commit stage requests the flush then
+        if (!this.handler.canFlush(() -> this.loop.requestFlush(this)))
+            return;
+
+        try {
+            while (true) {
+                this.fillWriteBuffer();
+                this.writeBuffer.flip();
+                this.writtenBytes += this.socketChannel.write(this.writeBuffer);
+                boolean drained = !this.writeBuffer.hasRemaining();
+                this.writeBuffer.compact();
+                this.runWrittenActions();
+
+                if (!drained) {
+                    this.updateInterest();
+                    return;
+                }
+                if (this.outbound.isEmpty())
+                    break;
+            }
+
+            this.writeBuffer = null;
+            if (this.closing) {
+                this.closeNow();
+                return;
+            }
+            this.updateInterest();
+        } catch (IOException e) {
+            this.onDisconnect();
+        }
+    }
+
+    private void runWrittenActions() {
+        WrittenAction next;
+        while ((next = this.writtenActions.peek()) != null && next.queuedBytes() <= this.writtenBytes) {
+            this.writtenActions.poll();
+            next.action().run();
+        }
+    }
+
+    /**
+     * Reads unless paused, and waits for the socket to become writable while output is left over.
+     */
+    private void updateInterest() {
+        if (this.key.isValid())
+            this.key.interestOps((this.paused ? 0 : SelectionKey.OP_READ)
+                    | (this.writeBuffer != null ? SelectionKey.OP_WRITE : 0));
+    }
+
+    private void fillWriteBuffer() {
+        if (this.writeBuffer == null)
+            this.writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+
+        byte[] next;
+        while ((next = this.outbound.peek()) != null) {
+            if (next.length + 1 > this.writeBuffer.remaining()) {
+                if (this.writeBuffer.position() > 0)
+                    return;
+                this.writeBuffer = ByteBuffer.allocate(next.length + 1);
+            }
+            this.writeBuffer.put(next).put((byte) '\n');
+            this.outbound.poll();
+        }
+    }
+
+    /**
+     * Ends the connection; the socket is closed even if the handler fails to clean up.
+     */
+    void onDisconnect() {
+        try {
+            this.handler.onDisconnect();
+        } finally {
+            this.closeNow();
+        }
+    }
+
+    private void closeNow() {
+        this.closing = true;
+        this.outbound.clear();
+        this.writtenActions.clear();
+        this.key.cancel();
+        try {
+            this.socketChannel.close();
+        } catch (IOException e) {
+            System.err.println("error: failed to close client channel. " + e.getMessage());
+        }
+    }
+
+    private record WrittenAction(long queuedBytes, Runnable action) {
+    }
+}
@@ -0,0 +1,39 @@
+package dslab.broker;
+
+import java.util.Locale;
+
+/**
+ * What a bounded queue does with a publish that would exceed its limits.
+ */
+public enum OverflowPolicy {
+    /**
+     * Accept the message and discard the oldest ones until the queue is within its limits again.
+     */
+    DROP_HEAD,
+    /**
+     * Discard the message and answer the publish with an error.
+     */
+    REJECT_PUBLISH,
+    /**
+     * Wait for consumers to make room, rejecting the message like {@link #REJECT_PUBLISH} once the timeout passed.
+     */
+    BLOCK_PUBLISH;
+
+    public static OverflowPolicy parse(String value) {
+        return switch (value) {
+            case "drop-head" -> DROP_HEAD;
+            case "reject-publish" -> REJECT_PUBLISH;
+            case "block-publish" -> BLOCK_PUBLISH;
+            default -> throw new IllegalArgumentException("unknown overflow policy: " + value);
+        };
+    }
+
+    /**
+     * The argument {@link #parse(String)} accepts, independent of the default locale, so that declarations written
+     * to the topology journal replay on any machine.
+     */
+    @Override
+    public String toString() {
+        return this.name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+}
@@ -1,4 +0,0 @@
-package dslab.broker;
-
-public record Pair<K, V>(K node, V index) {
-}
@@ -0,0 +1,111 @@
+package dslab.broker;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Buffer of a priority queue, handing out messages of a higher {@link Message#priority()} first and messages of the
+ * same priority in publishing order.
+ * <p>
+ * Every priority level has its own first-in first-out sub-queue, and a bitmask records which of them hold messages.
+ * Adding a message appends it to the sub-queue of its level and taking one reads the highest set bit of the mask, so
+ * both are O(1) no matter how many messages wait. Messages with a priority above the queue's maximum are treated as
+ * having the maximum.
+ */
+class PriorityMessageBuffer implements MessageBuffer {
+
+    private final ArrayDeque<Message>[] levels;
+    private int nonEmpty;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = this.lock.newCondition();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    PriorityMessageBuffer(int maxPriority) {
+        this.levels = new ArrayDeque[maxPriority + 1];
+        for (int i = 0; i < this.levels.length; i++)
+            this.levels[i] = new ArrayDeque<>();
+    }
+
+    @Override
+    public void put(Message message) {
+        this.lock.lock();
+        try {
+            this.add(message);
+            this.notEmpty.signal();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public void putAll(List<Message> messages) {
+        this.lock.lock();
+        try {
+            for (Message message : messages)
+                this.add(message);
+            this.notEmpty.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void add(Message message) {
+        int level = this.levelOf(message);
+        this.levels[level].addLast(message);
+        this.nonEmpty |= 1 << level;
+    }
+
+    private int levelOf(Message message) {
+        return Math.min(message.priority(), this.levels.length - 1);
+    }
+
+    @Override
+    public Message take() throws InterruptedException {
+        this.lock.lockInterruptibly();
+        try {
+            while (this.nonEmpty == 0)
+                this.notEmpty.await();
+            return this.remove();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public Message poll() {
+        this.lock.lock();
+        try {
+            return this.nonEmpty == 0 ? null : this.remove();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public Message poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        this.lock.lockInterruptibly();
+        try {
+            while (this.nonEmpty == 0) {
+                if (remaining <= 0)
+                    return null;
+                remaining = this.notEmpty.awaitNanos(remaining);
+            }
+            return this.remove();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private Message remove() {
+        int level = 31 - Integer.numberOfLeadingZeros(this.nonEmpty);
+        ArrayDeque<Message> messages = this.levels[level];
+        Message message = messages.poll();
+        if (messages.isEmpty())
+            this.nonEmpty &= ~(1 << level);
+        return message;
+    }
+}
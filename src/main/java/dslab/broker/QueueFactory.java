@@ -0,0 +1,74 @@
+package dslab.broker;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HexFormat;
+
+import dslab.config.BrokerConfig;
+
+/**
+ * Creates the queues declared by clients, backed by the buffer type the broker is configured for.
+ */
+class QueueFactory {
+
+    private final BrokerConfig config;
+    private final GroupCommitter committer;
+    private final TimerWheel timers;
+    private final Path queueDirectory;
+    private final Path spillDirectory;
+
+    QueueFactory(BrokerConfig config, GroupCommitter committer, TimerWheel timers) {
+        this.config = config;
+        this.committer = committer;
+        this.timers = timers;
+        this.queueDirectory = Path.of(config.dataDir(), config.componentId(), "queues");
+        this.spillDirectory = Path.of(config.dataDir(), config.componentId(), "lazy");
+    }
+
+    /**
+     * @throws UncheckedIOException if the files of a durable or lazy queue cannot be opened
+     */
+    NamedQueue create(String name, QueueOptions options) {
+        MessageBuffer buffer = this.createBuffer(name, options);
+        TtlMessageBuffer ttl = null;
+        if (options.messageTtlMillis() > 0)
+            buffer = ttl = new TtlMessageBuffer(buffer, options.messageTtlMillis(), this.timers);
+        if (options.isBounded()) {
+            BoundedMessageBuffer bounded = new BoundedMessageBuffer(buffer, options);
+            // expired messages make room right away, unless they are paged out as copies
+            if (ttl != null && !options.lazy())
+                ttl.setExpiredListener(bounded::releaseExpired);
+            buffer = bounded;
+        }
+        return new NamedQueue(name, buffer, options);
+    }
+
+    private MessageBuffer createBuffer(String name, QueueOptions options) {
+        try {
+            if (options.durable())
+                return new DurableMessageBuffer(this.directoryOf(this.queueDirectory, name),
+                        CommitLog.DEFAULT_SEGMENT_SIZE, this.committer);
+            if (options.lazy())
+                return new LazyMessageBuffer(this.directoryOf(this.spillDirectory, name),
+                        SpillLog.DEFAULT_SEGMENT_SIZE, LazyMessageBuffer.DEFAULT_WINDOW);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (options.maxPriority() > 0)
+            return new PriorityMessageBuffer(options.maxPriority());
+        if (this.config.usesRingQueues())
+            return new RingMessageBuffer(this.config.queueCapacity(), WaitStrategy.of(this.config.waitStrategy()),
+                    RingMessageBuffer.DEFAULT_FULL_TIMEOUT_MILLIS);
+        return new LinkedMessageBuffer();
+    }
+
+    /**
+     * Queue names may contain any character, so the directory is named after their hex encoding.
+     */
+    private Path directoryOf(Path parent, String name) {
+        return parent.resolve(HexFormat.of().formatHex(name.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,126 @@
+package dslab.broker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Arguments of a queue declaration, given after the queue name, e.g. {@code queue orders durable max-length=1000}.
+ *
+ * @param durable            whether messages are kept in a commit log and survive a broker restart
+ * @param lazy               whether messages beyond a small in-memory window are paged out to disk
+ * @param maxLength          maximum number of waiting messages, 0 for no limit
+ * @param maxBytes           maximum total UTF-8 size of the waiting messages, 0 for no limit
+ * @param overflow           what happens to publishes exceeding a limit
+ * @param blockTimeoutMillis how long {@link OverflowPolicy#BLOCK_PUBLISH} waits for room
+ * @param messageTtlMillis   time to live of every message in the queue, 0 for none
+ * @param expiresMillis      how long the queue may go unused before it is deleted, 0 for never
+ * @param maxPriority        highest message priority the queue orders by, 0 for a plain first-in first-out queue
+ * @param exclusive          whether only the declaring connection may use the queue, which is deleted when it closes
+ * @param autoDelete         whether the queue is deleted once its last subscription ended
+ */
+public record QueueOptions(boolean durable, boolean lazy, long maxLength, long maxBytes, OverflowPolicy overflow,
+                           long blockTimeoutMillis, long messageTtlMillis, long expiresMillis, int maxPriority,
+                           boolean exclusive, boolean autoDelete) {
+
+    public static final long DEFAULT_BLOCK_TIMEOUT_MILLIS = 1000;
+    public static final QueueOptions DEFAULT =
+            new QueueOptions(false, false, 0, 0, OverflowPolicy.DROP_HEAD, DEFAULT_BLOCK_TIMEOUT_MILLIS, 0, 0, 0, false,
+                    false);
+
+    /**
+     * Parses the declaration arguments starting at index {@code from}.
+     *
+     * @throws IllegalArgumentException if an argument is unknown or invalid, or arguments conflict
+     */
+    public static QueueOptions parse(String[] args, int from) {
+        boolean durable = false;
+        boolean lazy = false;
+        long maxLength = 0;
+        long maxBytes = 0;
+        OverflowPolicy overflow = OverflowPolicy.DROP_HEAD;
+        long blockTimeoutMillis = DEFAULT_BLOCK_TIMEOUT_MILLIS;
+        long messageTtlMillis = 0;
+        long expiresMillis = 0;
+        long maxPriority = 0;
+        boolean exclusive = false;
+        boolean autoDelete = false;
+
+        for (int i = from; i < args.length; i++) {
+            String arg = args[i];
+            int separator = arg.indexOf('=');
+            String value = separator < 0 ? null : arg.substring(separator + 1);
+            switch (separator < 0 ? arg : arg.substring(0, separator + 1)) {
+                case "durable" -> durable = true;
+                case "lazy" -> lazy = true;
+                case "exclusive" -> exclusive = true;
+                case "auto-delete" -> autoDelete = true;
+                case "max-length=" -> maxLength = parsePositive(arg, value);
+                case "max-bytes=" -> maxBytes = parsePositive(arg, value);
+                case "overflow=" -> overflow = OverflowPolicy.parse(value);
+                case "block-timeout-ms=" -> blockTimeoutMillis = parsePositive(arg, value);
+                case "message-ttl=" -> messageTtlMillis = parsePositive(arg, value);
+                case "expires=" -> expiresMillis = parsePositive(arg, value);
+                case "max-priority=" -> maxPriority = parsePositive(arg, value);
+                default -> throw new IllegalArgumentException("unknown queue argument: " + arg);
+            }
+        }
+        if (durable && lazy)
+            throw new IllegalArgumentException("durable queues cannot be lazy");
+        if (maxPriority > Message.MAX_PRIORITY)
+            throw new IllegalArgumentException("max-priority must be between 1 and " + Message.MAX_PRIORITY);
+        if (maxPriority > 0 && (durable || lazy))
+            throw new IllegalArgumentException("priority queues cannot be durable or lazy");
+        if (exclusive && durable)
+            throw new IllegalArgumentException("exclusive queues cannot be durable");
+        return new QueueOptions(durable, lazy, maxLength, maxBytes, overflow, blockTimeoutMillis, messageTtlMillis,
+                expiresMillis, (int) maxPriority, exclusive, autoDelete);
+    }
+
+    private static long parsePositive(String arg, String value) {
+        try {
+            long parsed = Long.parseLong(value);
+            if (parsed > 0)
+                return parsed;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("invalid queue argument: " + arg);
+    }
+
+    /**
+     * Whether the queue has a length or size limit.
+     */
+    public boolean isBounded() {
+        return this.maxLength > 0 || this.maxBytes > 0;
+    }
+
+    /**
+     * Returns the declaration arguments that {@link #parse(String[], int)} turns into these options.
+     */
+    public List<String> toArguments() {
+        List<String> arguments = new ArrayList<>();
+        if (this.durable)
+            arguments.add("durable");
+        if (this.lazy)
+            arguments.add("lazy");
+        if (this.maxLength > 0)
+            arguments.add("max-length=" + this.maxLength);
+        if (this.maxBytes > 0)
+            arguments.add("max-bytes=" + this.maxBytes);
+        if (this.overflow != OverflowPolicy.DROP_HEAD)
+            arguments.add("overflow=" + this.overflow);
+        if (this.blockTimeoutMillis != DEFAULT_BLOCK_TIMEOUT_MILLIS)
+            arguments.add("block-timeout-ms=" + this.blockTimeoutMillis);
+        if (this.messageTtlMillis > 0)
+            arguments.add("message-ttl=" + this.messageTtlMillis);
+        if (this.expiresMillis > 0)
+            arguments.add("expires=" + this.expiresMillis);
+        if (this.maxPriority > 0)
+            arguments.add("max-priority=" + this.maxPriority);
+        if (this.exclusive)
+            arguments.add("exclusive");
+        if (this.autoDelete)
+            arguments.add("auto-delete");
+        return arguments;
+    }
+}
@@ -0,0 +1,80 @@
+package dslab.broker;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes queues: on request of a client, auto-delete queues once their last subscription ended, and queues declared
+ * with an expiry once they were unused for that long, i.e. had no subscriptions and were not declared again. Exclusive
+ * queues are deleted by the connection owning them when it closes.
+ * <p>
+ * Expiry checks run on the broker's {@link TimerWheel}: a check that finds the queue used in the meantime schedules
+ * the next one for when it could expire at the earliest, so an expiring queue has one pending timeout.
+ * <p>
+ * A deleted queue is removed from the broker's queues, the bindings of every exchange and the persisted topology, and
+ * its messages are discarded. Publishes that resolved the queue just before are dropped.
+ */
+class QueueReaper {
+
+    private final Map<String, NamedQueue> queues;
+    private final Map<String, Exchange> exchanges;
+    private final TopologyStore topology;
+    private final TimerWheel timers;
+
+    QueueReaper(Map<String, NamedQueue> queues, Map<String, Exchange> exchanges, TopologyStore topology,
+                TimerWheel timers) {
+        this.queues = queues;
+        this.exchanges = exchanges;
+        this.topology = topology;
+        this.timers = timers;
+    }
+
+    /**
+     * Starts watching a newly created queue, if it was declared with an expiry.
+     */
+    void watch(NamedQueue queue) {
+        long expiresNanos = TimeUnit.MILLISECONDS.toNanos(queue.getOptions().expiresMillis());
+        if (expiresNanos > 0)
+            this.timers.schedule(System.nanoTime() + expiresNanos, () -> this.check(queue, expiresNanos));
+    }
+
+    private void check(NamedQueue queue, long expiresNanos) {
+        if (queue.isDeleted())
+            return;
+
+        long now = System.nanoTime();
+        long lastUsed = queue.lastUsed();
+        if (lastUsed != Long.MAX_VALUE && now - lastUsed >= expiresNanos) {
+            if (this.delete(queue))
+                System.out.println("Queue " + queue.getName() + " expired.");
+            return;
+        }
+
+        long next = lastUsed == Long.MAX_VALUE ? now + expiresNanos : lastUsed + expiresNanos;
+        this.timers.schedule(next, () -> this.check(queue, expiresNanos));
+    }
+
+    /**
+     * Called after a subscription to the queue ended; deletes an auto-delete queue left without subscriptions.
+     */
+    void unsubscribed(NamedQueue queue) {
+        if (queue.getOptions().autoDelete() && queue.lastUsed() != Long.MAX_VALUE && this.delete(queue))
+            System.out.println("Queue " + queue.getName() + " auto-deleted.");
+    }
+
+    /**
+     * Deletes the queue, unless it was deleted already.
+     *
+     * @return whether the queue was deleted by this call
+     */
+    boolean delete(NamedQueue queue) {
+        // marked first, so a concurrent declaration does not pick the queue up again, see BrokerClientHandler
+        if (!queue.delete())
+            return false;
+        this.topology.queueDeleted(queue.getName());
+        this.queues.remove(queue.getName(), queue);
+        for (Exchange exchange : this.exchanges.values())
+            exchange.unbind(queue);
+        return true;
+    }
+}
@@ -0,0 +1,255 @@
+package dslab.broker;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded multi-producer buffer on a pre-allocated ring; no allocation per message.
+ * <p>
+ * A producer claims a position with a compare-and-set on the tail, and only while the ring has space for it.
+ * Every slot carries a sequence number: the slot for position {@code p} is writable while its sequence is {@code p}
+ * and readable once the producer released it as {@code p + 1}. The consumer frees the slot for the next lap by
+ * setting its sequence to {@code p + capacity}. The head and tail counters are padded to their own cache lines so
+ * publishers and the subscriber do not false-share.
+ * <p>
+ * Claiming is lock-free, not wait-free: a failed compare-and-set means another producer claimed, so the ring as a
+ * whole always makes progress, but a single producer may retry while others keep winning. A wait-free
+ * {@code getAndIncrement} on the tail would claim positions beyond a full ring. A producer giving up on such a
+ * position after the full timeout would leave a hole the consumer waits at forever, unless every claim could be
+ * cancelled by marking its slot as skipped, which costs the consumer a check per slot. It would also no longer keep
+ * a batch contiguous, which needs room for the whole batch before the claim. A producer only retries for a claim
+ * another one won in the meantime, and the claim is a single atomic instruction either way.
+ * <p>
+ * When the ring is full a producer spins, then parks in short steps until the consumer made room. Once the full
+ * timeout passed, or if the producer was interrupted, the message is rejected and counted like a rejection of a
+ * bounded queue, see {@link BoundedMessageBuffer#countRejections(int)}. An event loop thread holds up all of its
+ * connections while it waits, so it gives up after a few milliseconds. The capacity should still comfortably exceed
+ * the expected backlog of a queue.
+ * <p>
+ * Messages handed back by consumers bypass the ring, so returning them never waits for room.
+ */
+class RingMessageBuffer implements MessageBuffer {
+
+    static final long DEFAULT_FULL_TIMEOUT_MILLIS = 1000;
+
+    private static final int PRODUCER_SPIN_TRIES = 100;
+    private static final long PRODUCER_PARK_NANOS = 1_000;
+    private static final long EVENT_LOOP_FULL_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long POLL_PARK_NANOS = 10_000;
+
+    private final Message[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final PaddedSequence head = new PaddedSequence();
+    private final PaddedSequence tail = new PaddedSequence();
+    private final WaitStrategy waitStrategy;
+    private final long fullTimeoutNanos;
+    // taken messages handed back by consumers, these go out before the ring
+    private final Queue<Message> returned = new ConcurrentLinkedQueue<>();
+
+    RingMessageBuffer(int capacity, WaitStrategy waitStrategy, long fullTimeoutMillis) {
+        if (capacity < 1 || capacity > 1 << 30)
+            throw new IllegalArgumentException("ring capacity must be between 1 and 2^30: " + capacity);
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+
+        this.slots = new Message[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+            this.sequences.set(i, i);
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+        this.fullTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(fullTimeoutMillis);
+    }
+
+    @Override
+    public void put(Message message) {
+        long position = this.claim(1);
+        if (position < 0) {
+            BoundedMessageBuffer.countRejections(1);
+            return;
+        }
+        this.publish(position, message);
+        this.waitStrategy.signal();
+    }
+
+    /**
+     * Claims one contiguous range of positions for the whole batch, so the batch stays in order and contiguous even
+     * with concurrent publishers. A batch larger than the ring is claimed in ranges of the ring's capacity; if the
+     * ring stays full, the rest of the batch is rejected.
+     */
+    @Override
+    public void putAll(List<Message> messages) {
+        int published = 0;
+        while (published < messages.size()) {
+            int count = Math.min(messages.size() - published, this.slots.length);
+            long position = this.claim(count);
+            if (position < 0) {
+                BoundedMessageBuffer.countRejections(messages.size() - published);
+                break;
+            }
+            for (Message message : messages.subList(published, published + count))
+                this.publish(position++, message);
+            published += count;
+        }
+        if (published > 0)
+            this.waitStrategy.signal();
+    }
+
+    @Override
+    public void requeue(List<Message> messages) {
+        this.returned.addAll(messages);
+        this.waitStrategy.signal();
+    }
+
+    /**
+     * Claims the next {@code count} positions once the ring has space for all of them, returning the first, or
+     * {@code -1} if the ring stayed full until the timeout or the thread was interrupted.
+     */
+    private long claim(int count) {
+        int tries = 0;
+        long deadline = 0;
+        while (true) {
+            long position = this.tail.get();
+            if (position + count - this.head.get() <= this.slots.length) {
+                if (this.tail.compareAndSet(position, position + count))
+                    return position;
+                // another producer claimed it first, retry with the new tail
+                continue;
+            }
+
+            if (tries++ < PRODUCER_SPIN_TRIES) {
+                Thread.onSpinWait();
+                continue;
+            }
+            if (tries == PRODUCER_SPIN_TRIES + 1) {
+                long timeout = Backpressure.current() == null
+                        ? this.fullTimeoutNanos : Math.min(this.fullTimeoutNanos, EVENT_LOOP_FULL_TIMEOUT_NANOS);
+                deadline = System.nanoTime() + timeout;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || Thread.currentThread().isInterrupted())
+                return -1;
+            LockSupport.parkNanos(Math.min(remaining, PRODUCER_PARK_NANOS));
+        }
+    }
+
+    /**
+     * Fills a claimed slot. Its sequence may lag for a moment, while the consumer that already moved the head past
+     * the previous lap is about to free it.
+     */
+    private void publish(long position, Message message) {
+        int index = (int) position & this.mask;
+
+        for (int tries = 0; this.sequences.get(index) != position; tries++) {
+            if (tries < PRODUCER_SPIN_TRIES)
+                Thread.onSpinWait();
+            else
+                LockSupport.parkNanos(PRODUCER_PARK_NANOS);
+        }
+
+        this.slots[index] = message;
+        this.sequences.set(index, position + 1);
+    }
+
+    @Override
+    public Message take() throws InterruptedException {
+        Message message;
+        while ((message = this.poll()) == null)
+            this.waitStrategy.waitFor(this::isReadable);
+        return message;
+    }
+
+    /**
+     * Timed waits park in short steps instead of going through the wait strategy, as they only serve to linger for
+     * more messages of a batch.
+     */
+    @Override
+    public Message poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Message message;
+        while ((message = this.poll()) == null) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                return null;
+            LockSupport.parkNanos(Math.min(remaining, POLL_PARK_NANOS));
+            if (Thread.interrupted())
+                throw new InterruptedException();
+        }
+        return message;
+    }
+
+    @Override
+    public Message poll() {
+        Message returnedMessage = this.returned.poll();
+        if (returnedMessage != null)
+            return returnedMessage;
+
+        while (true) {
+            long position = this.head.get();
+            int index = (int) position & this.mask;
+            long sequence = this.sequences.get(index);
+
+            if (sequence < position + 1)
+                return null;
+            if (sequence == position + 1 && this.head.compareAndSet(position, position + 1)) {
+                Message message = this.slots[index];
+                this.slots[index] = null;
+                this.sequences.set(index, position + this.slots.length);
+                return message;
+            }
+            // another consumer took this position, retry with the new head
+        }
+    }
+
+    private boolean isReadable() {
+        if (!this.returned.isEmpty())
+            return true;
+        long position = this.head.get();
+        return this.sequences.get((int) position & this.mask) == position + 1;
+    }
+
+    int capacity() {
+        return this.slots.length;
+    }
+
+    @SuppressWarnings("unused")
+    private abstract static class LeftPadding {
+        long p01, p02, p03, p04, p05, p06, p07;
+    }
+
+    private abstract static class Value extends LeftPadding {
+        volatile long value;
+    }
+
+    @SuppressWarnings("unused")
+    private static final class PaddedSequence extends Value {
+        private static final VarHandle VALUE;
+
+        static {
+            try {
+                VALUE = MethodHandles.lookup().findVarHandle(Value.class, "value", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        long p11, p12, p13, p14, p15, p16, p17;
+
+        long get() {
+            return this.value;
+        }
+
+        boolean compareAndSet(long expected, long updated) {
+            return VALUE.compareAndSet(this, expected, updated);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package dslab.broker;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Reusable scratch objects of the routing indexes, a small bounded number of them.
+ * <p>
+ * A thread local would keep one scratch per thread that ever published, and with a thread (possibly virtual) per
+ * connection that is one per connection, each grown to the largest index it matched against. Only as many threads as
+ * there are processors can match at the same time, plus those descheduled in the middle of a match, so two slots per
+ * processor are enough to avoid allocating in the common case. A thread borrows starting at the slot picked by its id
+ * and tries the others if that one is empty, and puts the scratch back into the first empty slot from there. A new
+ * scratch is only created if all slots are empty, and a surplus one is only dropped if all slots are taken.
+ */
+final class ScratchPool<T> {
+
+    private final AtomicReferenceArray<T> slots;
+    private final Supplier<T> factory;
+
+    ScratchPool(Supplier<T> factory) {
+        this(2 * Runtime.getRuntime().availableProcessors(), factory);
+    }
+
+    ScratchPool(int size, Supplier<T> factory) {
+        this.slots = new AtomicReferenceArray<>(size);
+        this.factory = factory;
+    }
+
+    T borrow() {
+        int first = this.slot();
+        for (int i = 0; i < this.slots.length(); i++) {
+            int slot = (first + i) % this.slots.length();
+            if (this.slots.get(slot) == null)
+                continue;
+            T scratch = this.slots.getAndSet(slot, null);
+            if (scratch != null)
+                return scratch;
+        }
+        return this.factory.get();
+    }
+
+    void release(T scratch) {
+        int first = this.slot();
+        for (int i = 0; i < this.slots.length(); i++) {
+            if (this.slots.compareAndSet((first + i) % this.slots.length(), null, scratch))
+                return;
+        }
+    }
+
+    private int slot() {
+        return (int) (Thread.currentThread().threadId() % this.slots.length());
+    }
+}
@@ -0,0 +1,61 @@
+package dslab.broker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Blocking {@link ClientChannel} on top of a plain {@link Socket}.
+ * <p>
+ * Written lines are only sent on {@link #flush()}, never because a buffer ran full, so the handler decides when
+ * responses become visible to the client.
+ */
+class SocketClientChannel implements ClientChannel {
+
+    private final Socket socket;
+    private final OutputStream out;
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    SocketClientChannel(Socket socket) throws IOException {
+        this.socket = socket;
+        this.out = socket.getOutputStream();
+    }
+
+    @Override
+    public void write(byte[] line) {
+        this.lock.lock();
+        try {
+            this.pending.writeBytes(line);
+            this.pending.write('\n');
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.lock.lock();
+        try {
+            if (this.pending.size() == 0)
+                return;
+            this.pending.writeTo(this.out);
+            this.pending.reset();
+            this.out.flush();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.flush();
+        } finally {
+            if (!this.socket.isClosed())
+                this.socket.close();
+        }
+    }
+}
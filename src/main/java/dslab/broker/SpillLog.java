@@ -0,0 +1,217 @@
+package dslab.broker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.stream.Stream;
+
+/**
+ * First-in first-out store of messages in sequential segment files, used to page out the middle of a lazy queue.
+ * <p>
+ * A record is {@code [int size][long deadline][payload]}, see {@link Message#deadline()}. Segment files are written
+ * and read strictly sequentially through one buffer each, and deleted once read completely. Nothing survives a
+ * restart: leftover files are removed when the log is opened, and the buffers are released whenever the log runs
+ * empty.
+ * <p>
+ * Not thread-safe, the owning buffer serializes all calls.
+ */
+class SpillLog implements Closeable {
+
+    static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+    private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES;
+    private static final String SEGMENT_SUFFIX = ".spill";
+
+    private final Path directory;
+    private final int segmentSize;
+    private long size;
+
+    private long writeSegment;
+    private FileChannel writeChannel;
+    private ByteBuffer writeBuffer;
+    private long writtenBytes;
+
+    private long readSegment;
+    private FileChannel readChannel;
+    private ByteBuffer readBuffer;
+
+    SpillLog(Path directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Number of messages written and not read yet.
+     */
+    long size() {
+        return this.size;
+    }
+
+    boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    void append(Message message) throws IOException {
+        byte[] payload = message.payload();
+        // expired messages need not be paged out
+        if (payload == null)
+            return;
+        if (this.writeChannel == null)
+            this.openWriteSegment();
+
+        int length = HEADER_SIZE + payload.length;
+        if (this.writtenBytes > 0 && this.writtenBytes + length > this.segmentSize) {
+            this.flush();
+            this.writeChannel.close();
+            this.writeSegment++;
+            this.openWriteSegment();
+        }
+
+        if (length > this.writeBuffer.remaining())
+            this.flush();
+        if (length > this.writeBuffer.capacity()) {
+            ByteBuffer record = ByteBuffer.allocate(length)
+                    .putInt(payload.length).putLong(message.deadline()).put(payload).flip();
+            while (record.hasRemaining())
+                this.writeChannel.write(record);
+        } else {
+            this.writeBuffer.putInt(payload.length).putLong(message.deadline()).put(payload);
+        }
+        this.writtenBytes += length;
+        this.size++;
+    }
+
+    /**
+     * Moves up to {@code max} of the oldest messages into the given queue.
+     *
+     * @return the number of messages moved
+     */
+    int read(int max, Queue<Message> into) throws IOException {
+        int count = 0;
+        while (count < max && this.size > 0) {
+            if (this.readChannel == null)
+                this.openReadSegment();
+
+            if (!this.ensureReadable(Integer.BYTES))
+                continue;
+            int length = this.readBuffer.getInt(this.readBuffer.position());
+            if (!this.ensureReadable(HEADER_SIZE + length))
+                throw new IOException("truncated record in spill segment " + this.readSegment);
+
+            this.readBuffer.getInt();
+            long deadline = this.readBuffer.getLong();
+            byte[] payload = new byte[length];
+            this.readBuffer.get(payload);
+            into.add(new Message(payload, deadline));
+            this.size--;
+            count++;
+        }
+
+        if (this.size == 0)
+            this.reset();
+        return count;
+    }
+
+    /**
+     * Makes sure the read buffer holds the given number of bytes, advancing to the next segment once the current
+     * one was read completely.
+     *
+     * @return whether the bytes are available in the current segment; {@code false} after moving to the next one
+     */
+    private boolean ensureReadable(int bytes) throws IOException {
+        if (this.readBuffer.remaining() >= bytes)
+            return true;
+
+        // the segment being read may still be written to
+        if (this.readSegment == this.writeSegment)
+            this.flush();
+
+        if (bytes > this.readBuffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(bytes);
+            larger.put(this.readBuffer).flip();
+            this.readBuffer = larger;
+        }
+
+        this.readBuffer.compact();
+        while (this.readBuffer.position() < bytes) {
+            if (this.readChannel.read(this.readBuffer) <= 0)
+                break;
+        }
+        this.readBuffer.flip();
+        if (this.readBuffer.remaining() >= bytes)
+            return true;
+
+        if (this.readBuffer.hasRemaining() || this.readSegment == this.writeSegment)
+            throw new IOException("truncated record in spill segment " + this.readSegment);
+        this.readChannel.close();
+        Files.delete(this.segmentPath(this.readSegment));
+        this.readSegment++;
+        this.openReadSegment();
+        return false;
+    }
+
+    private void flush() throws IOException {
+        this.writeBuffer.flip();
+        while (this.writeBuffer.hasRemaining())
+            this.writeChannel.write(this.writeBuffer);
+        this.writeBuffer.clear();
+    }
+
+    private void openWriteSegment() throws IOException {
+        Files.createDirectories(this.directory);
+        this.writeChannel = FileChannel.open(this.segmentPath(this.writeSegment),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        if (this.writeBuffer == null)
+            this.writeBuffer = ByteBuffer.allocate(IO_BUFFER_SIZE);
+        this.writtenBytes = 0;
+    }
+
+    private void openReadSegment() throws IOException {
+        this.readChannel = FileChannel.open(this.segmentPath(this.readSegment), StandardOpenOption.READ);
+        if (this.readBuffer == null)
+            this.readBuffer = ByteBuffer.allocate(IO_BUFFER_SIZE).flip();
+    }
+
+    /**
+     * Deletes all segments and releases the buffers once everything was read, so an idle lazy queue holds neither.
+     */
+    private void reset() throws IOException {
+        if (this.readChannel != null)
+            this.readChannel.close();
+        if (this.writeChannel != null)
+            this.writeChannel.close();
+        for (long segment = this.readSegment; segment <= this.writeSegment; segment++)
+            Files.deleteIfExists(this.segmentPath(segment));
+
+        this.readChannel = null;
+        this.writeChannel = null;
+        this.readBuffer = null;
+        this.writeBuffer = null;
+        this.writeSegment++;
+        this.readSegment = this.writeSegment;
+    }
+
+    private Path segmentPath(long segment) {
+        return this.directory.resolve(String.format("%020d%s", segment, SEGMENT_SUFFIX));
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.size = 0;
+        this.reset();
+        Files.deleteIfExists(this.directory);
+    }
+}
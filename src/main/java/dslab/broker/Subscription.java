@@ -0,0 +1,196 @@
+package dslab.broker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * A consumer registered with the {@link Dispatcher} of a queue. Messages handed over by the dispatcher are pushed to
+ * the consumer on the subscription's own thread until {@link #interrupt()} is called.
+ * <p>
+ * Messages are handed over in batches: after the first message the subscription drains whatever else the dispatcher
+ * handed over, up to the configured batch size, a byte budget and an optional linger time, so the consumer can
+ * deliver the whole batch with a single flush.
+ * <p>
+ * The dispatcher only offers a message if the subscription's delivery window has room. A subscription created with a
+ * prefetch has a window of that many messages, which only the consumer reopens by granting credits via
+ * {@link #grant(int)}. Without credits the dispatcher skips it, so a slow client leaves its backlog in the queue
+ * rather than in socket buffers or a blocked push thread. Other subscriptions get a fixed window that reopens as
+ * messages are written.
+ * <p>
+ * A delivery in progress is never interrupted: on virtual threads an interrupt during blocking socket I/O would
+ * close the client's socket. {@link #interrupt()} therefore waits for the current delivery and only then interrupts
+ * the thread while it is waiting for messages. The delivery lock is a {@link ReentrantLock} rather than a
+ * {@code synchronized} block, so a virtual thread blocked in a socket write does not pin its carrier.
+ */
+public class Subscription implements Runnable {
+
+    static final int MAX_BATCH_BYTES = 64 * 1024;
+    static final int DEFAULT_WINDOW = 1024;
+
+    private final NamedQueue queue;
+    private final Consumer<List<Message>> consumer;
+    private final SubscriptionSettings settings;
+    private final boolean creditBased;
+    private final Semaphore window;
+    private final BlockingQueue<Message> handedOver = new LinkedBlockingQueue<>();
+    private final ReentrantLock deliveryLock = new ReentrantLock();
+    private final List<Message> batch = new ArrayList<>();
+    private volatile boolean running = true;
+    private Thread thread;
+    private Consumer<Runnable> whenWritten = Runnable::run;
+
+    public Subscription(NamedQueue queue, Consumer<List<Message>> consumer, SubscriptionSettings settings) {
+        this(queue, consumer, settings, false, Math.max(DEFAULT_WINDOW, settings.batchSize()));
+    }
+
+    /**
+     * Creates a subscription that may have at most {@code prefetch} delivered messages outstanding until the
+     * consumer grants more credits via {@link #grant(int)}.
+     */
+    public Subscription(NamedQueue queue, Consumer<List<Message>> consumer, SubscriptionSettings settings,
+                        int prefetch) {
+        this(queue, consumer, settings, true, prefetch);
+    }
+
+    private Subscription(NamedQueue queue, Consumer<List<Message>> consumer, SubscriptionSettings settings,
+                         boolean creditBased, int window) {
+        this.queue = queue;
+        this.consumer = consumer;
+        this.settings = settings;
+        this.creditBased = creditBased;
+        this.window = new Semaphore(window);
+    }
+
+    /**
+     * Sets how a window without credits learns that a delivered batch was written, see
+     * {@link ClientChannel#whenWritten(Runnable)}. By default it reopens as soon as the consumer returns.
+     */
+    void setWhenWritten(Consumer<Runnable> whenWritten) {
+        this.whenWritten = whenWritten;
+    }
+
+    public void start() {
+        this.thread = this.settings.threadFactory().newThread(this);
+        this.thread.start();
+        this.queue.subscribe(this, this.settings.threadFactory());
+    }
+
+    public void interrupt() {
+        this.queue.unsubscribe(this);
+        this.running = false;
+        this.deliveryLock.lock();
+        try {
+            if (this.thread != null)
+                this.thread.interrupt();
+        } finally {
+            this.deliveryLock.unlock();
+        }
+    }
+
+    public boolean isCreditBased() {
+        return this.creditBased;
+    }
+
+    public void grant(int credits) {
+        if (!this.creditBased)
+            return;
+        this.window.release(Math.min(credits, Integer.MAX_VALUE - this.window.availablePermits()));
+        this.queue.onWindowOpened();
+    }
+
+    /**
+     * Reserves room for one message; called by the dispatcher before {@link #offer(Message)}.
+     */
+    boolean tryReserve() {
+        return this.running && this.window.tryAcquire();
+    }
+
+    void offer(Message message) {
+        this.handedOver.add(message);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (this.running) {
+                this.collectBatch();
+                this.deliver();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.handBack();
+        }
+    }
+
+    private void collectBatch() throws InterruptedException {
+        Message message = this.handedOver.take();
+        this.batch.add(message);
+
+        int bytes = message.size();
+        long deadline = System.nanoTime() + this.settings.lingerNanos();
+        while (this.batch.size() < this.settings.batchSize() && bytes < MAX_BATCH_BYTES) {
+            message = this.handedOver.poll();
+            if (message == null && this.settings.lingerNanos() > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining > 0)
+                    message = this.handedOver.poll(remaining, TimeUnit.NANOSECONDS);
+            }
+            if (message == null)
+                break;
+
+            this.batch.add(message);
+            bytes += message.size();
+        }
+    }
+
+    private void deliver() {
+        this.deliveryLock.lock();
+        try {
+            if (!this.running)
+                return;
+
+            int handedOver = this.batch.size();
+            this.batch.removeIf(Message::isExpired);
+            int expired = handedOver - this.batch.size();
+            if (!this.batch.isEmpty())
+                this.consumer.accept(this.batch);
+            this.batch.clear();
+
+            if (this.creditBased) {
+                // expired messages never reach the consumer, so they do not use up its credit either
+                this.release(expired);
+            } else {
+                // a client that stops reading thereby holds at most a window of messages outside the queue
+                this.whenWritten.accept(() -> this.release(handedOver));
+            }
+        } finally {
+            this.deliveryLock.unlock();
+        }
+    }
+
+    private void release(int messages) {
+        if (messages > 0) {
+            this.window.release(messages);
+            this.queue.onWindowOpened();
+        }
+    }
+
+    /**
+     * Returns undelivered messages to the queue for the next subscriber. Only called once the subscription was
+     * removed from the dispatcher, so nothing is handed over afterwards.
+     */
+    private void handBack() {
+        this.handedOver.drainTo(this.batch);
+        if (this.batch.isEmpty())
+            return;
+        this.queue.requeue(this.batch);
+        this.batch.clear();
+    }
+}
@@ -0,0 +1,13 @@
+package dslab.broker;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * How subscriptions push to their clients.
+ *
+ * @param threadFactory creates the push thread of every subscription
+ * @param batchSize     maximum number of messages delivered with a single flush
+ * @param lingerNanos   how long a push waits for further messages before flushing a partial batch, 0 to not wait
+ */
+public record SubscriptionSettings(ThreadFactory threadFactory, int batchSize, long lingerNanos) {
+}
@@ -0,0 +1,261 @@
+package dslab.broker;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel running all timeouts of a broker, e.g. message and queue expiry, on a single thread.
+ * <p>
+ * The wheel is an array of buckets, each a doubly linked list of timeouts, and advances one bucket per tick. A
+ * timeout further away than one revolution is put into the bucket of its deadline with the number of remaining
+ * revolutions, so scheduling and cancelling are O(1) no matter how many timeouts are pending, and a tick only
+ * visits the timeouts of one bucket. Timeouts fire up to one tick late, never early.
+ * <p>
+ * Any thread may schedule or cancel; both only enqueue the request, which the wheel thread applies on its next tick.
+ * <p>
+ * Timeouts that only concern an object, like a message's expiry, are {@link #scheduleWeakly scheduled weakly}: the
+ * wheel does not keep the object alive, and once it was collected its timeout is cancelled on the next tick.
+ */
+class TimerWheel implements Runnable {
+
+    static final long DEFAULT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    static final int DEFAULT_WHEEL_SIZE = 1024;
+
+    private final long tickNanos;
+    private final Bucket[] buckets;
+    private final int mask;
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+    private final Thread thread;
+    private final long startTime = System.nanoTime();
+    private long tick;
+    private volatile boolean running = true;
+
+    TimerWheel(long tickNanos, int wheelSize, ThreadFactory threadFactory) {
+        int size = Integer.highestOneBit(Math.max(1, wheelSize));
+        if (size < wheelSize)
+            size <<= 1;
+
+        this.tickNanos = tickNanos;
+        this.buckets = new Bucket[size];
+        for (int i = 0; i < size; i++)
+            this.buckets[i] = new Bucket();
+        this.mask = size - 1;
+        this.thread = threadFactory.newThread(this);
+    }
+
+    void start() {
+        this.thread.start();
+    }
+
+    void shutdown() {
+        this.running = false;
+        this.thread.interrupt();
+        try {
+            this.thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs the task on the wheel thread once the deadline, on the {@link System#nanoTime()} scale, passed. Tasks must
+     * be short, they delay every other timeout.
+     */
+    Timeout schedule(long deadline, Runnable task) {
+        Timeout timeout = new Timeout(this, deadline, task);
+        this.scheduled.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Runs the task with the target once the deadline passed, unless the target was garbage collected before. The
+     * wheel only refers to the target weakly, so e.g. a message that was delivered or dropped is not kept on the heap
+     * until its deadline; the task must not refer to the target itself.
+     */
+    <T> Timeout scheduleWeakly(long deadline, T target, Consumer<? super T> task) {
+        WeakTask<T> weakTask = new WeakTask<>(target, this.collected, task);
+        Timeout timeout = new Timeout(this, deadline, weakTask);
+        weakTask.timeout = timeout;
+        this.scheduled.add(timeout);
+        // the reference must not be cleared before it knows its timeout
+        Reference.reachabilityFence(target);
+        return timeout;
+    }
+
+    @Override
+    public void run() {
+        while (this.running) {
+            long tickEnd = this.startTime + (this.tick + 1) * this.tickNanos;
+            long sleep = tickEnd - System.nanoTime();
+            if (sleep > 0) {
+                LockSupport.parkNanos(sleep);
+                continue;
+            }
+
+            this.transferCollected();
+            this.transferCancelled();
+            this.transferScheduled();
+            this.buckets[(int) this.tick & this.mask].expire(tickEnd);
+            this.tick++;
+        }
+    }
+
+    private void transferScheduled() {
+        // bounded per tick, so a flood of new timeouts cannot stall the wheel
+        for (int i = 0; i < 100_000; i++) {
+            Timeout timeout = this.scheduled.poll();
+            if (timeout == null)
+                return;
+            if (timeout.state != Timeout.PENDING)
+                continue;
+
+            long ticks = Math.max(0, (timeout.deadline - this.startTime + this.tickNanos - 1) / this.tickNanos - 1);
+            // never into a bucket that was already passed
+            long target = Math.max(ticks, this.tick);
+            timeout.remainingRounds = (target - this.tick) / this.buckets.length;
+            this.buckets[(int) target & this.mask].add(timeout);
+        }
+    }
+
+    private void transferCollected() {
+        Reference<?> reference;
+        while ((reference = this.collected.poll()) != null)
+            ((WeakTask<?>) reference).timeout.cancel();
+    }
+
+    private void transferCancelled() {
+        Timeout timeout;
+        while ((timeout = this.cancelled.poll()) != null) {
+            if (timeout.bucket != null)
+                timeout.bucket.remove(timeout);
+        }
+    }
+
+    /**
+     * A scheduled task, which may be cancelled until it ran.
+     */
+    static final class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final TimerWheel wheel;
+        private final long deadline;
+        private final Runnable task;
+        private volatile int state = PENDING;
+        // only accessed by the wheel thread
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout previous;
+        private Timeout next;
+
+        private Timeout(TimerWheel wheel, long deadline, Runnable task) {
+            this.wheel = wheel;
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        void cancel() {
+            synchronized (this) {
+                if (this.state != PENDING)
+                    return;
+                this.state = CANCELLED;
+            }
+            this.wheel.cancelled.add(this);
+        }
+
+        boolean isCancelled() {
+            return this.state == CANCELLED;
+        }
+
+        private boolean markExpired() {
+            synchronized (this) {
+                if (this.state != PENDING)
+                    return false;
+                this.state = EXPIRED;
+                return true;
+            }
+        }
+    }
+
+    private static final class WeakTask<T> extends WeakReference<T> implements Runnable {
+        private final Consumer<? super T> task;
+        private Timeout timeout;
+
+        WeakTask(T target, ReferenceQueue<Object> collected, Consumer<? super T> task) {
+            super(target, collected);
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            T target = this.get();
+            if (target != null)
+                this.task.accept(target);
+        }
+    }
+
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (this.head == null) {
+                this.head = this.tail = timeout;
+            } else {
+                this.tail.next = timeout;
+                timeout.previous = this.tail;
+                this.tail = timeout;
+            }
+        }
+
+        void expire(long tickEnd) {
+            Timeout timeout = this.head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds > 0) {
+                    timeout.remainingRounds--;
+                } else if (timeout.deadline - tickEnd <= 0) {
+                    this.remove(timeout);
+                    if (timeout.markExpired())
+                        run(timeout);
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.bucket != this)
+                return;
+            if (timeout.previous != null)
+                timeout.previous.next = timeout.next;
+            else
+                this.head = timeout.next;
+            if (timeout.next != null)
+                timeout.next.previous = timeout.previous;
+            else
+                this.tail = timeout.previous;
+            timeout.previous = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        private static void run(Timeout timeout) {
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                System.err.println("error: timer task failed. " + e.getMessage());
+            }
+        }
+    }
+}
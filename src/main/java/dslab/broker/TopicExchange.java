@@ -1,23 +1,108 @@
 package dslab.broker;
 
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
 public class TopicExchange implements Exchange {
 
+    public static final int DEFAULT_ROUTE_CACHE_SIZE = 1024;
+
     private final String name;
     private final String type;
     private final Trie trie;
 
+    // routing key -> resolved queues, tagged with the binding version they were resolved against
+    private final ConcurrentHashMap<String, CachedRoute> routeCache;
+    private final int routeCacheSize;
+    private final LongAdder routeCacheHits = new LongAdder();
+    private final LongAdder routeCacheMisses = new LongAdder();
+
     public TopicExchange(String name) {
+        this(name, DEFAULT_ROUTE_CACHE_SIZE);
+    }
+
+    public TopicExchange(String name, int routeCacheSize) {
         this.name = name;
         this.type = "topic";
         this.trie = new Trie();
+        this.routeCache = new ConcurrentHashMap<>();
+        this.routeCacheSize = routeCacheSize;
     }
 
     public void bind(NamedQueue queue, String routingKey) {
-        this.trie.bind(queue, routingKey.split("\\."));
+        if (this.trie.bind(queue, routingKey.split("\\.")))
+            this.routeCache.clear();
+    }
+
+    @Override
+    public boolean unbind(NamedQueue queue, String routingKey) {
+        if (!this.trie.unbind(queue, routingKey.split("\\.")))
+            return false;
+        this.routeCache.clear();
+        return true;
+    }
+
+    @Override
+    public void unbind(NamedQueue queue) {
+        if (this.trie.unbind(queue))
+            this.routeCache.clear();
+    }
+
+    @Override
+    public void clear() {
+        this.trie.clear();
+        this.routeCache.clear();
+    }
+
+    public void publish(String routingKey, Message message) {
+        for (NamedQueue queue : this.route(routingKey))
+            queue.enqueue(message);
+    }
+
+    @Override
+    public void publishAll(String routingKey, List<Message> messages) {
+        for (NamedQueue queue : this.route(routingKey))
+            queue.enqueueAll(messages);
     }
 
-    public void publish(String routingKey, String message) {
-        this.trie.publish(routingKey.split("\\."), message);
+    private NamedQueue[] route(String routingKey) {
+        long version = this.trie.version();
+        CachedRoute cached = this.routeCache.get(routingKey);
+        if (cached != null && cached.version() == version) {
+            this.routeCacheHits.increment();
+            return cached.queues();
+        }
+
+        this.routeCacheMisses.increment();
+        NamedQueue[] queues = this.trie.resolve(routingKey.split("\\."));
+        if (this.routeCacheSize > 0) {
+            if (cached == null && this.routeCache.size() >= this.routeCacheSize)
+                this.evictOne();
+            this.routeCache.put(routingKey, new CachedRoute(version, queues));
+        }
+        return queues;
+    }
+
+    private void evictOne() {
+        Iterator<String> keys = this.routeCache.keySet().iterator();
+        if (keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    public long getRouteCacheHits() {
+        return this.routeCacheHits.sum();
+    }
+
+    public long getRouteCacheMisses() {
+        return this.routeCacheMisses.sum();
+    }
+
+    public int getRouteCacheSize() {
+        return this.routeCache.size();
     }
 
     @Override
@@ -29,4 +114,7 @@ public class TopicExchange implements Exchange {
     public String getType() {
         return this.type;
     }
+
+    private record CachedRoute(long version, NamedQueue[] queues) {
+    }
 }
@@ -0,0 +1,221 @@
+package dslab.broker;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Immutable matching automaton compiled from the bindings of a {@link Trie}.
+ * <p>
+ * Every trie node becomes a state with its literal transitions, an optional {@code *} transition and an optional
+ * {@code #} transition. A {@code #} state loops on any word and is also entered without consuming a word. Matching
+ * simulates the automaton on the set of active states in a single pass over the key's words, using scratch arrays
+ * borrowed from a {@link ScratchPool}, so usually only the resulting array is allocated.
+ * <p>
+ * Every distinct queue gets a dense index at compile time. A queue reached through several patterns (e.g. bound with
+ * both {@code a.*} and {@code a.#}) is collected only once per key by marking its index in a scratch array.
+ */
+final class TopicMatcher {
+
+    private static final int NONE = -1;
+    private static final NamedQueue[] NO_QUEUES = new NamedQueue[0];
+    private static final ScratchPool<Scratch> SCRATCH = new ScratchPool<>(Scratch::new);
+
+    private final Map<String, Integer>[] literals;
+    private final int[] star;
+    private final int[] hash;
+    private final boolean[] loops;
+    private final int[][] queues;
+    private NamedQueue[] queueTable;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private TopicMatcher(int states) {
+        this.literals = new Map[states];
+        this.star = new int[states];
+        this.hash = new int[states];
+        this.loops = new boolean[states];
+        this.queues = new int[states][];
+    }
+
+    static TopicMatcher compile(TrieNode root) {
+        Map<TrieNode, Integer> ids = new HashMap<>();
+        List<TrieNode> nodes = new ArrayList<>();
+        Queue<TrieNode> pending = new ArrayDeque<>();
+        ids.put(root, 0);
+        nodes.add(root);
+        pending.add(root);
+
+        while (!pending.isEmpty()) {
+            for (TrieNode child : pending.poll().getNext().values()) {
+                ids.put(child, nodes.size());
+                nodes.add(child);
+                pending.add(child);
+            }
+        }
+
+        TopicMatcher matcher = new TopicMatcher(nodes.size());
+        Map<NamedQueue, Integer> queueIndexes = new IdentityHashMap<>();
+        for (int id = 0; id < nodes.size(); id++) {
+            TrieNode node = nodes.get(id);
+            matcher.star[id] = NONE;
+            matcher.hash[id] = NONE;
+            matcher.loops[id] = id != 0 && "#".equals(node.getWord());
+
+            Map<String, Integer> literal = new HashMap<>();
+            for (Map.Entry<String, TrieNode> child : node.getNext().entrySet()) {
+                int target = ids.get(child.getValue());
+                switch (child.getKey()) {
+                    case "*" -> matcher.star[id] = target;
+                    case "#" -> matcher.hash[id] = target;
+                    default -> literal.put(child.getKey(), target);
+                }
+            }
+            matcher.literals[id] = literal.isEmpty() ? null : literal;
+
+            List<Integer> bound = new ArrayList<>();
+            for (NamedQueue queue : node.getQueues())
+                bound.add(queueIndexes.computeIfAbsent(queue, q -> queueIndexes.size()));
+            matcher.queues[id] = bound.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        matcher.queueTable = new NamedQueue[queueIndexes.size()];
+        queueIndexes.forEach((queue, index) -> matcher.queueTable[index] = queue);
+        return matcher;
+    }
+
+    /**
+     * Returns the distinct queues bound to at least one pattern that matches the given words.
+     */
+    NamedQueue[] resolve(String[] routingKey) {
+        Scratch scratch = SCRATCH.borrow();
+        try {
+            return this.resolve(routingKey, scratch);
+        } finally {
+            SCRATCH.release(scratch);
+        }
+    }
+
+    private NamedQueue[] resolve(String[] routingKey, Scratch scratch) {
+        int matches = this.match(routingKey, scratch);
+
+        scratch.nextQueueGeneration();
+        int count = 0;
+        for (int i = 0; i < matches; i++) {
+            for (int queue : this.queues[scratch.current[i]]) {
+                if (scratch.queueMark[queue] == scratch.queueGeneration)
+                    continue;
+                scratch.queueMark[queue] = scratch.queueGeneration;
+                scratch.collected[count++] = queue;
+            }
+        }
+        if (count == 0)
+            return NO_QUEUES;
+
+        NamedQueue[] result = new NamedQueue[count];
+        for (int i = 0; i < count; i++)
+            result[i] = this.queueTable[scratch.collected[i]];
+        return result;
+    }
+
+    /**
+     * Runs the automaton over the given words and leaves the accepting states in {@code scratch.current}.
+     *
+     * @return the number of accepting states
+     */
+    private int match(String[] routingKey, Scratch scratch) {
+        scratch.ensureCapacity(this.star.length, this.queueTable.length);
+
+        scratch.nextGeneration();
+        int size = this.add(0, scratch.current, 0, scratch);
+
+        for (int i = 0; i < routingKey.length && size > 0; i++) {
+            String word = routingKey[i];
+            int[] from = scratch.current;
+            int[] to = scratch.next;
+            int nextSize = 0;
+            scratch.nextGeneration();
+
+            for (int j = 0; j < size; j++) {
+                int state = from[j];
+
+                Map<String, Integer> literal = this.literals[state];
+                if (literal != null) {
+                    Integer target = literal.get(word);
+                    if (target != null)
+                        nextSize = this.add(target, to, nextSize, scratch);
+                }
+                if (this.star[state] != NONE)
+                    nextSize = this.add(this.star[state], to, nextSize, scratch);
+                if (this.loops[state])
+                    nextSize = this.add(state, to, nextSize, scratch);
+            }
+
+            scratch.current = to;
+            scratch.next = from;
+            size = nextSize;
+        }
+
+        int accepting = 0;
+        for (int j = 0; j < size; j++) {
+            int state = scratch.current[j];
+            if (this.queues[state].length > 0)
+                scratch.current[accepting++] = state;
+        }
+        return accepting;
+    }
+
+    /**
+     * Adds a state and everything reachable from it through {@code #} without consuming a word.
+     */
+    private int add(int state, int[] set, int size, Scratch scratch) {
+        while (state != NONE && scratch.mark[state] != scratch.generation) {
+            scratch.mark[state] = scratch.generation;
+            set[size++] = state;
+            state = this.hash[state];
+        }
+        return size;
+    }
+
+    private static final class Scratch {
+        private int[] current = new int[0];
+        private int[] next = new int[0];
+        private int[] mark = new int[0];
+        private int generation;
+        private int[] queueMark = new int[0];
+        private int[] collected = new int[0];
+        private int queueGeneration;
+
+        void ensureCapacity(int states, int queues) {
+            if (this.mark.length < states) {
+                this.current = new int[states];
+                this.next = new int[states];
+                this.mark = new int[states];
+                this.generation = 0;
+            }
+            if (this.queueMark.length < queues) {
+                this.queueMark = new int[queues];
+                this.collected = new int[queues];
+                this.queueGeneration = 0;
+            }
+        }
+
+        void nextGeneration() {
+            if (++this.generation == Integer.MAX_VALUE) {
+                Arrays.fill(this.mark, 0);
+                this.generation = 1;
+            }
+        }
+
+        void nextQueueGeneration() {
+            if (++this.queueGeneration == Integer.MAX_VALUE) {
+                Arrays.fill(this.queueMark, 0);
+                this.queueGeneration = 1;
+            }
+        }
+    }
+}
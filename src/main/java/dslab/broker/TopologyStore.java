@@ -0,0 +1,378 @@
+package dslab.broker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Persists the broker topology, i.e. declared exchanges, declared queues and their bindings, so a restarted broker
+ * serves again without clients re-issuing their declarations.
+ * <p>
+ * The topology is kept as a compact binary snapshot plus a journal of the declarations made since. Every journal
+ * record is {@code [int size][int crc32c][payload]}; replay stops at the first damaged record. On startup the
+ * snapshot and journal are loaded, applied to the broker, and compacted into a new snapshot, which is written to a
+ * temporary file and moved into place so a crash never leaves a partial snapshot behind. A running broker compacts
+ * again whenever the journal grew past {@code maxJournalBytes}, so a long-lived broker does not replay every
+ * declaration it ever saw. Replaying a journal onto a snapshot that already contains it yields the same topology, so
+ * a crash between moving the snapshot and truncating the journal is harmless.
+ * <p>
+ * A disabled store records nothing.
+ */
+class TopologyStore {
+
+    private static final int SNAPSHOT_MAGIC = 0x534d5154;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final String SNAPSHOT_FILE = "topology.snapshot";
+    private static final String JOURNAL_FILE = "topology.journal";
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+    static final long DEFAULT_MAX_JOURNAL_BYTES = 1024 * 1024;
+
+    private static final byte EXCHANGE = 1;
+    private static final byte QUEUE = 2;
+    private static final byte BINDING = 3;
+    private static final byte QUEUE_DELETED = 4;
+    private static final byte BINDING_REMOVED = 5;
+    private static final byte EXCHANGE_DELETED = 6;
+
+    private final Path directory;
+    private final boolean sync;
+    private final long maxJournalBytes;
+    private final Map<String, String> exchanges = new LinkedHashMap<>();
+    private final Map<String, QueueOptions> queues = new LinkedHashMap<>();
+    private final Set<Binding> bindings = new LinkedHashSet<>();
+    private final CRC32C crc = new CRC32C();
+    private FileChannel journal;
+    private long journalBytes;
+
+    /**
+     * Applies a loaded topology to the broker.
+     */
+    interface Loader {
+        void exchange(String type, String name);
+
+        void queue(String name, QueueOptions options);
+
+        void binding(String exchange, String queue, String key);
+    }
+
+    private TopologyStore(Path directory, boolean sync, long maxJournalBytes) {
+        this.directory = directory;
+        this.sync = sync;
+        this.maxJournalBytes = maxJournalBytes;
+    }
+
+    static TopologyStore disabled() {
+        return new TopologyStore(null, false, 0);
+    }
+
+    static TopologyStore open(Path directory, boolean sync, Loader loader) throws IOException {
+        return open(directory, sync, DEFAULT_MAX_JOURNAL_BYTES, loader);
+    }
+
+    /**
+     * Loads the topology stored in the directory, hands it to the loader and starts a new journal. Nothing is
+     * written if the stored topology cannot be read, so a damaged snapshot is never replaced by an empty one.
+     *
+     * @param sync            whether every journal record is forced to the storage device
+     * @param maxJournalBytes journal size after which the topology is compacted into a new snapshot
+     * @throws IOException if the snapshot is damaged or cannot be read
+     */
+    static TopologyStore open(Path directory, boolean sync, long maxJournalBytes, Loader loader) throws IOException {
+        Files.createDirectories(directory);
+        TopologyStore store = new TopologyStore(directory, sync, maxJournalBytes);
+        store.readSnapshot();
+        boolean journaled = store.replayJournal();
+
+        store.exchanges.forEach((name, type) -> loader.exchange(type, name));
+        store.queues.forEach(loader::queue);
+        for (Binding binding : store.bindings)
+            loader.binding(binding.exchange(), binding.queue(), binding.key());
+
+        if (journaled)
+            store.compact();
+        else
+            store.openJournal();
+        return store;
+    }
+
+    synchronized void exchangeDeclared(String type, String name) {
+        if (this.directory != null && this.exchanges.putIfAbsent(name, type) == null)
+            this.append(EXCHANGE, type, name);
+    }
+
+    synchronized void queueDeclared(String name, QueueOptions options) {
+        if (this.directory != null && this.queues.putIfAbsent(name, options) == null)
+            this.append(QUEUE, name, String.join(" ", options.toArguments()));
+    }
+
+    synchronized void queueDeleted(String name) {
+        if (this.directory != null && this.removeQueue(name))
+            this.append(QUEUE_DELETED, name);
+    }
+
+    private boolean removeQueue(String name) {
+        if (this.queues.remove(name) == null)
+            return false;
+        this.bindings.removeIf(binding -> binding.queue().equals(name));
+        return true;
+    }
+
+    synchronized void queueBound(String exchange, String queue, String key) {
+        // a queue deleted while the client bound it must not leave a binding behind
+        if (this.directory != null && this.queues.containsKey(queue)
+                && this.bindings.add(new Binding(exchange, queue, key)))
+            this.append(BINDING, exchange, queue, key);
+    }
+
+    synchronized void queueUnbound(String exchange, String queue, String key) {
+        if (this.directory != null && this.removeBinding(exchange, queue, key))
+            this.append(BINDING_REMOVED, exchange, queue, key);
+    }
+
+    private boolean removeBinding(String exchange, String queue, String key) {
+        // fanout exchanges ignore binding keys, unbinding removes the queue whatever key it was bound with
+        if ("fanout".equals(this.exchanges.get(exchange)))
+            return this.bindings.removeIf(
+                    binding -> binding.exchange().equals(exchange) && binding.queue().equals(queue));
+        return this.bindings.remove(new Binding(exchange, queue, key));
+    }
+
+    synchronized void exchangeDeleted(String name) {
+        if (this.directory != null && this.removeExchange(name))
+            this.append(EXCHANGE_DELETED, name);
+    }
+
+    private boolean removeExchange(String name) {
+        if (this.exchanges.remove(name) == null)
+            return false;
+        this.bindings.removeIf(binding -> binding.exchange().equals(name));
+        return true;
+    }
+
+    /**
+     * Writes the current topology as a new snapshot and starts an empty journal. If the snapshot cannot be written,
+     * the journal is kept and records further changes.
+     */
+    synchronized void compact() throws IOException {
+        if (this.directory == null)
+            return;
+
+        this.writeSnapshot();
+        if (this.journal != null)
+            this.journal.close();
+        this.openJournal();
+    }
+
+    private void openJournal() throws IOException {
+        this.journal = FileChannel.open(this.directory.resolve(JOURNAL_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.journalBytes = 0;
+    }
+
+    synchronized void close() {
+        if (this.directory == null)
+            return;
+        try {
+            this.compact();
+            this.journal.close();
+        } catch (IOException e) {
+            System.err.println("error: failed to write topology snapshot. " + e.getMessage());
+        }
+    }
+
+    private void append(byte type, String... fields) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream payload = new DataOutputStream(bytes);
+            payload.writeByte(type);
+            for (String field : fields)
+                writeString(payload, field);
+
+            byte[] record = bytes.toByteArray();
+            this.crc.reset();
+            this.crc.update(record);
+
+            ByteBuffer buffer = ByteBuffer.allocate(2 * Integer.BYTES + record.length);
+            buffer.putInt(buffer.capacity()).putInt((int) this.crc.getValue()).put(record).flip();
+            while (buffer.hasRemaining())
+                this.journal.write(buffer);
+            if (this.sync)
+                this.journal.force(false);
+            this.journalBytes += buffer.capacity();
+        } catch (IOException e) {
+            System.err.println("error: failed to journal topology change. " + e.getMessage());
+            return;
+        }
+
+        if (this.journalBytes < this.maxJournalBytes)
+            return;
+        try {
+            this.compact();
+        } catch (IOException e) {
+            System.err.println("error: failed to compact topology journal. " + e.getMessage());
+        }
+    }
+
+    /**
+     * Applies the journal on top of the snapshot and returns whether it held anything.
+     */
+    private boolean replayJournal() throws IOException {
+        Path path = this.directory.resolve(JOURNAL_FILE);
+        if (!Files.exists(path) || Files.size(path) == 0)
+            return false;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                int size;
+                try {
+                    size = in.readInt();
+                } catch (EOFException e) {
+                    return true;
+                }
+
+                int checksum = in.readInt();
+                if (size < 2 * Integer.BYTES + 1 || size > MAX_RECORD_SIZE) {
+                    System.err.println("error: damaged topology journal record, ignoring the rest of the journal.");
+                    return true;
+                }
+                byte[] record = new byte[size - 2 * Integer.BYTES];
+                in.readFully(record);
+                this.crc.reset();
+                this.crc.update(record);
+                if ((int) this.crc.getValue() != checksum) {
+                    System.err.println("error: damaged topology journal record, ignoring the rest of the journal.");
+                    return true;
+                }
+                this.apply(ByteBuffer.wrap(record));
+            }
+        } catch (EOFException e) {
+            System.err.println("error: truncated topology journal record, ignoring it.");
+        }
+        return true;
+    }
+
+    private void apply(ByteBuffer record) throws IOException {
+        switch (record.get()) {
+            case EXCHANGE -> {
+                String type = readString(record);
+                this.exchanges.putIfAbsent(readString(record), type);
+            }
+            case QUEUE -> {
+                String name = readString(record);
+                this.queues.putIfAbsent(name, parseArguments(readString(record)));
+            }
+            case BINDING -> this.bindings.add(new Binding(readString(record), readString(record), readString(record)));
+            case QUEUE_DELETED -> this.removeQueue(readString(record));
+            case BINDING_REMOVED -> this.removeBinding(readString(record), readString(record), readString(record));
+            case EXCHANGE_DELETED -> this.removeExchange(readString(record));
+            default -> throw new IOException("unknown topology record type");
+        }
+    }
+
+    private void readSnapshot() throws IOException {
+        Path path = this.directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(path))
+            return;
+
+        // read at once, the checksum covers everything but itself
+        byte[] bytes = Files.readAllBytes(path);
+        if (bytes.length < 6 * Integer.BYTES)
+            throw new IOException("truncated topology snapshot: " + path);
+        CRC32C checksum = new CRC32C();
+        checksum.update(bytes, 0, bytes.length - Integer.BYTES);
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        if (in.getInt(bytes.length - Integer.BYTES) != (int) checksum.getValue())
+            throw new IOException("topology snapshot checksum mismatch: " + path);
+        if (in.getInt() != SNAPSHOT_MAGIC || in.getInt() != SNAPSHOT_VERSION)
+            throw new IOException("not a topology snapshot: " + path);
+
+        for (int i = in.getInt(); i > 0; i--) {
+            String type = readString(in);
+            this.exchanges.put(readString(in), type);
+        }
+        for (int i = in.getInt(); i > 0; i--) {
+            String name = readString(in);
+            this.queues.put(name, parseArguments(readString(in)));
+        }
+        for (int i = in.getInt(); i > 0; i--)
+            this.bindings.add(new Binding(readString(in), readString(in), readString(in)));
+    }
+
+    private void writeSnapshot() throws IOException {
+        Path temporary = this.directory.resolve(SNAPSHOT_FILE + ".tmp");
+        CRC32C checksum = new CRC32C();
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            BufferedOutputStream file = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(file, checksum));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+
+            out.writeInt(this.exchanges.size());
+            for (Map.Entry<String, String> exchange : this.exchanges.entrySet()) {
+                writeString(out, exchange.getValue());
+                writeString(out, exchange.getKey());
+            }
+            out.writeInt(this.queues.size());
+            for (Map.Entry<String, QueueOptions> queue : this.queues.entrySet()) {
+                writeString(out, queue.getKey());
+                writeString(out, String.join(" ", queue.getValue().toArguments()));
+            }
+            out.writeInt(this.bindings.size());
+            for (Binding binding : this.bindings) {
+                writeString(out, binding.exchange());
+                writeString(out, binding.queue());
+                writeString(out, binding.key());
+            }
+            out.flush();
+
+            new DataOutputStream(file).writeInt((int) checksum.getValue());
+            file.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, this.directory.resolve(SNAPSHOT_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) throws IOException {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining())
+            throw new IOException("invalid string length in topology data");
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static QueueOptions parseArguments(String arguments) {
+        return QueueOptions.parse(arguments.isEmpty() ? new String[0] : arguments.split(" "), 0);
+    }
+
+    private record Binding(String exchange, String queue, String key) {
+    }
+}
@@ -1,51 +1,164 @@
 package dslab.broker;
 
-import java.util.Stack;
-import java.util.Arrays;
-import java.util.Optional;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Topic bindings, matched by a {@link TopicMatcher} compiled from them.
+ * <p>
+ * Compiling takes time proportional to all bindings, so neither binds nor publishes wait for it: a change starts a
+ * compile in the background, and until the new automaton is swapped in publishes walk the trie itself. Changes made
+ * while a compile runs are picked up by another one right after, so a burst of binds compiles only a few times.
+ */
 public class Trie {
-    public TrieNode root;
+    public volatile TrieNode root;
+
+    private volatile Compiled compiled;
+    private volatile long version;
+    private final AtomicBoolean compiling = new AtomicBoolean();
 
     public Trie() {
         this.root = new TrieNode(".");
+        this.compiled = new Compiled(0, TopicMatcher.compile(this.root));
     }
 
-    public void bind(NamedQueue queue, String[] routingKey) {
-        TrieNode[] currHolder = {this.root};
-        Arrays.stream(routingKey).forEach(keyPart -> {
-            currHolder[0].getNext().computeIfAbsent(keyPart, TrieNode::new);
-            currHolder[0] = currHolder[0].getNext().get(keyPart);
-        });
-        currHolder[0].insertQueue(queue);
+    /**
+     * @return whether the bindings changed, i.e. the queue was not yet bound with this key
+     */
+    public synchronized boolean bind(NamedQueue queue, String[] routingKey) {
+        TrieNode curr = this.root;
+        for (String keyPart : routingKey)
+            curr = curr.getNext().computeIfAbsent(keyPart, TrieNode::new);
+        if (!curr.insertQueue(queue))
+            return false;
+
+        this.changed();
+        return true;
     }
 
-    public void publish(String[] routingKey, String message) {
-        Stack<Pair<TrieNode, Integer>> stack = new Stack<>();
-        stack.push(new Pair<>(this.root, 0));
+    /**
+     * Removes a binding and prunes the nodes that no other binding goes through, so the trie and the matcher compiled
+     * from it only ever hold live bindings.
+     *
+     * @return whether the bindings changed, i.e. the queue was bound with this key
+     */
+    public synchronized boolean unbind(NamedQueue queue, String[] routingKey) {
+        TrieNode[] path = new TrieNode[routingKey.length + 1];
+        path[0] = this.root;
+        for (int i = 0; i < routingKey.length; i++) {
+            path[i + 1] = path[i].getNext().get(routingKey[i]);
+            if (path[i + 1] == null)
+                return false;
+        }
+        if (!path[routingKey.length].removeQueue(queue))
+            return false;
 
-        while (!stack.isEmpty()) {
-            Pair<TrieNode, Integer> curr = stack.pop();
+        for (int i = routingKey.length; i > 0 && path[i].isEmpty(); i--)
+            path[i - 1].getNext().remove(routingKey[i - 1]);
+        this.changed();
+        return true;
+    }
 
-            if (curr.index() >= routingKey.length) {
-                Optional.ofNullable(curr.node().getNext().get("#"))
-                        .map(TrieNode::getQueues)
-                        .orElse(curr.node().getQueues())
-                        .forEach(queue -> queue.enqueue(message));
-                continue;
-            }
+    /**
+     * Removes all bindings of the queue and prunes the nodes left empty.
+     *
+     * @return whether the bindings changed
+     */
+    public synchronized boolean unbind(NamedQueue queue) {
+        // breadth first, so walking the list backwards visits every node after its children
+        List<TrieNode> nodes = new ArrayList<>();
+        nodes.add(this.root);
+        for (int i = 0; i < nodes.size(); i++)
+            nodes.addAll(nodes.get(i).getNext().values());
 
-            if (curr.node().getNext().containsKey(routingKey[curr.index()]))
-                stack.push(new Pair<>(curr.node().getNext().get(routingKey[curr.index()]), curr.index() + 1));
+        boolean removed = false;
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            TrieNode node = nodes.get(i);
+            removed |= node.removeQueue(queue);
+            node.getNext().values().removeIf(TrieNode::isEmpty);
+        }
+        if (removed)
+            this.changed();
+        return removed;
+    }
 
+    public synchronized void clear() {
+        this.root = new TrieNode(".");
+        this.changed();
+    }
 
-            if (curr.node().getNext().containsKey("*"))
-                stack.push(new Pair<>(curr.node().getNext().get("*"), curr.index() + 1));
+    private void changed() {
+        this.version++;
+        if (this.compiling.compareAndSet(false, true))
+            Thread.ofVirtual().name("topic-compiler").start(this::compile);
+    }
 
-            if (curr.node().getNext().containsKey("#")) {
-                stack.push(new Pair<>(curr.node().getNext().get("#"), curr.index()));
-                stack.push(new Pair<>(curr.node(), curr.index() + 1));
+    private void compile() {
+        do {
+            synchronized (this) {
+                this.compiled = new Compiled(this.version, TopicMatcher.compile(this.root));
             }
+            this.compiling.set(false);
+            // a change after the compile may have seen the flag still set and started none
+        } while (this.compiled.version() != this.version && this.compiling.compareAndSet(false, true));
+    }
+
+    public NamedQueue[] resolve(String[] routingKey) {
+        long version = this.version;
+        Compiled compiled = this.compiled;
+        if (compiled.version() == version)
+            return compiled.matcher().resolve(routingKey);
+        return this.walk(routingKey);
+    }
+
+    /**
+     * Matches like the automaton, but on the trie nodes, so it sees every binding that was made so far. Used only
+     * until the next compile finished, so it does not avoid allocating.
+     */
+    NamedQueue[] walk(String[] routingKey) {
+        Set<TrieNode> current = Collections.newSetFromMap(new IdentityHashMap<>());
+        enter(this.root, current);
+        for (int i = 0; i < routingKey.length && !current.isEmpty(); i++) {
+            String word = routingKey[i];
+            Set<TrieNode> next = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (TrieNode node : current) {
+                if (!word.equals("*") && !word.equals("#"))
+                    enter(node.getNext().get(word), next);
+                enter(node.getNext().get("*"), next);
+                if (node != this.root && "#".equals(node.getWord()))
+                    enter(node, next);
+            }
+            current = next;
         }
+
+        Set<NamedQueue> queues = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (TrieNode node : current) {
+            for (NamedQueue queue : node.getQueues())
+                queues.add(queue);
+        }
+        return queues.toArray(new NamedQueue[0]);
+    }
+
+    /**
+     * Adds a node and everything reachable from it through {@code #} without consuming a word.
+     */
+    private static void enter(TrieNode node, Set<TrieNode> nodes) {
+        while (node != null && nodes.add(node))
+            node = node.getNext().get("#");
+    }
+
+    /**
+     * Returns a counter that changes whenever the bindings change. Results of {@link #resolve(String[])} obtained after
+     * reading a version are valid for as long as the version is unchanged.
+     */
+    public long version() {
+        return this.version;
+    }
+
+    private record Compiled(long version, TopicMatcher matcher) {
     }
 }
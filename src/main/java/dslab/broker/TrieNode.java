@@ -1,24 +1,34 @@
 package dslab.broker;
 
-import java.util.List;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class TrieNode {
     private final String word;
-    private final List<NamedQueue> boundQueues;
+    private final CopyOnWriteArrayList<NamedQueue> boundQueues;
     private final ConcurrentMap<String, TrieNode> next;
 
     public TrieNode(String word) {
         this.word = word;
         this.next = new ConcurrentHashMap<>();
-        this.boundQueues = Collections.synchronizedList(new ArrayList<NamedQueue>());
+        // bindings are rare and publishes iterate without locking, which also avoids pinning virtual threads
+        this.boundQueues = new CopyOnWriteArrayList<>();
     }
 
-    public void insertQueue(NamedQueue queue) {
-        this.boundQueues.add(queue);
+    public boolean insertQueue(NamedQueue queue) {
+        return this.boundQueues.addIfAbsent(queue);
+    }
+
+    public boolean removeQueue(NamedQueue queue) {
+        return this.boundQueues.remove(queue);
+    }
+
+    /**
+     * Whether neither queues nor longer patterns are bound through this node, so it can be pruned.
+     */
+    public boolean isEmpty() {
+        return this.boundQueues.isEmpty() && this.next.isEmpty();
     }
 
     public Iterable<NamedQueue> getQueues() {
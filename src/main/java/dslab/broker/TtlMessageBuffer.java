@@ -0,0 +1,145 @@
+package dslab.broker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Applies a queue's message time to live: every message is put into the wrapped buffer with a deadline at most the
+ * TTL away, and a timeout on the broker's {@link TimerWheel} drops its payload once the deadline passed. Messages
+ * published with an earlier deadline of their own keep it. The wheel only refers to the messages weakly, so delivered
+ * or dropped messages do not stay on the heap until their deadline.
+ * <p>
+ * A bounded queue should not count a message from its expiry on, see {@link #setExpiredListener(Consumer)}: the
+ * listener is told once a message expired in the buffer, and the message is then skipped instead of returned. Only
+ * messages kept in memory as the same instance can be tracked this way, lazy queues page out copies.
+ */
+class TtlMessageBuffer implements MessageBuffer {
+
+    private final MessageBuffer messages;
+    private final long ttlNanos;
+    private final TimerWheel timers;
+    private Consumer<Message> expired;
+
+    TtlMessageBuffer(MessageBuffer messages, long ttlMillis, TimerWheel timers) {
+        this.messages = messages;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.timers = timers;
+    }
+
+    /**
+     * Sets the listener told about messages that expired while waiting in the buffer, instead of being returned
+     * later. Must be set before the first message is put.
+     */
+    void setExpiredListener(Consumer<Message> expired) {
+        this.expired = expired;
+    }
+
+    @Override
+    public void put(Message message) {
+        Message limited = this.limit(message);
+        if (limited != null)
+            this.messages.put(limited);
+    }
+
+    @Override
+    public void putAll(List<Message> messages) {
+        List<Message> limited = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            Message copy = this.limit(message);
+            if (copy != null)
+                limited.add(copy);
+        }
+        this.messages.putAll(limited);
+    }
+
+    /**
+     * Returns the copy to store, or {@code null} if the message expired already and the listener was told instead.
+     */
+    private Message limit(Message message) {
+        Message limited = message.limitTtl(this.ttlNanos);
+        if (limited == message)
+            return this.expired(message) ? null : message;
+
+        Consumer<Message> expired = this.expired;
+        if (expired == null) {
+            this.timers.scheduleWeakly(limited.deadline(), limited, Message::expire);
+        } else {
+            this.timers.scheduleWeakly(limited.deadline(), limited, copy -> {
+                if (copy.expireQueued())
+                    expired.accept(copy);
+            });
+        }
+        return limited;
+    }
+
+    private boolean expired(Message message) {
+        if (this.expired == null || message.payload() != null)
+            return false;
+        this.expired.accept(message);
+        return true;
+    }
+
+    /**
+     * Handed back messages were limited when they were published; those that expired while a consumer held them
+     * are not stored again.
+     */
+    @Override
+    public void requeue(List<Message> messages) {
+        List<Message> waiting = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            if (!this.expired(message)) {
+                message.enqueue();
+                waiting.add(message);
+            }
+        }
+        this.messages.requeue(waiting);
+    }
+
+    @Override
+    public Message take() throws InterruptedException {
+        Message message;
+        do {
+            message = this.messages.take();
+        } while (this.skip(message));
+        return message;
+    }
+
+    @Override
+    public Message poll() {
+        Message message;
+        do {
+            message = this.messages.poll();
+        } while (this.skip(message));
+        return message;
+    }
+
+    @Override
+    public Message poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Message message;
+        do {
+            message = this.messages.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } while (this.skip(message));
+        return message;
+    }
+
+    /**
+     * Whether the listener was told about the message already. Messages that are not copies of this buffer, e.g.
+     * recovered ones, never count as waiting and are returned as long as they have their payload.
+     */
+    private boolean skip(Message message) {
+        return this.expired != null && message != null && !message.dequeue() && message.payload() == null;
+    }
+
+    @Override
+    public void close() {
+        this.messages.close();
+    }
+
+    @Override
+    public void delete() {
+        this.messages.delete();
+    }
+}
@@ -0,0 +1,144 @@
+package dslab.broker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Decides how the consumer of a {@link RingMessageBuffer} waits for messages while the buffer is empty.
+ * <ul>
+ *     <li>{@code busy-spin}: lowest latency, burns a core per waiting subscription</li>
+ *     <li>{@code yielding}: spins briefly, then yields the CPU between checks</li>
+ *     <li>{@code sleeping}: spins, yields, then parks for short intervals</li>
+ *     <li>{@code blocking}: spins briefly, then blocks until a producer signals</li>
+ * </ul>
+ */
+public interface WaitStrategy {
+
+    /**
+     * Returns once {@code available} is true.
+     *
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    void waitFor(BooleanSupplier available) throws InterruptedException;
+
+    /**
+     * Called by producers after publishing a message.
+     */
+    void signal();
+
+    static WaitStrategy of(String name) {
+        return switch (name) {
+            case "busy-spin" -> new BusySpin();
+            case "yielding" -> new Yielding();
+            case "sleeping" -> new Sleeping();
+            case "blocking" -> new Blocking();
+            default -> throw new IllegalArgumentException("unknown wait strategy: " + name);
+        };
+    }
+
+    private static void checkInterrupted() throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+    }
+
+    final class BusySpin implements WaitStrategy {
+        @Override
+        public void waitFor(BooleanSupplier available) throws InterruptedException {
+            while (!available.getAsBoolean()) {
+                checkInterrupted();
+                Thread.onSpinWait();
+            }
+        }
+
+        @Override
+        public void signal() {
+        }
+    }
+
+    final class Yielding implements WaitStrategy {
+        private static final int SPIN_TRIES = 100;
+
+        @Override
+        public void waitFor(BooleanSupplier available) throws InterruptedException {
+            for (int tries = 0; !available.getAsBoolean(); tries++) {
+                checkInterrupted();
+                if (tries < SPIN_TRIES)
+                    Thread.onSpinWait();
+                else
+                    Thread.yield();
+            }
+        }
+
+        @Override
+        public void signal() {
+        }
+    }
+
+    final class Sleeping implements WaitStrategy {
+        private static final int SPIN_TRIES = 100;
+        private static final int YIELD_TRIES = 200;
+        private static final long SLEEP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+        @Override
+        public void waitFor(BooleanSupplier available) throws InterruptedException {
+            for (int tries = 0; !available.getAsBoolean(); tries++) {
+                checkInterrupted();
+                if (tries < SPIN_TRIES)
+                    Thread.onSpinWait();
+                else if (tries < YIELD_TRIES)
+                    Thread.yield();
+                else
+                    LockSupport.parkNanos(SLEEP_NANOS);
+            }
+        }
+
+        @Override
+        public void signal() {
+        }
+    }
+
+    final class Blocking implements WaitStrategy {
+        private static final int SPIN_TRIES = 100;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private final AtomicInteger waiters = new AtomicInteger();
+
+        @Override
+        public void waitFor(BooleanSupplier available) throws InterruptedException {
+            for (int tries = 0; tries < SPIN_TRIES; tries++) {
+                if (available.getAsBoolean())
+                    return;
+                Thread.onSpinWait();
+            }
+
+            this.lock.lockInterruptibly();
+            try {
+                this.waiters.incrementAndGet();
+                while (!available.getAsBoolean())
+                    this.notEmpty.await();
+            } finally {
+                this.waiters.decrementAndGet();
+                this.lock.unlock();
+            }
+        }
+
+        @Override
+        public void signal() {
+            // producers only pay for the lock while a consumer is actually parked
+            if (this.waiters.get() == 0)
+                return;
+
+            this.lock.lock();
+            try {
+                this.notEmpty.signalAll();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+    }
+}
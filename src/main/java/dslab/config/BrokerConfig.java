@@ -8,9 +8,43 @@ public record BrokerConfig(
         int port,
         String domain,
         String dnsHost,
-        int dnsPort
+        int dnsPort,
+        String transport,
+        int ioThreads,
+        ThreadingMode threading,
+        String queueType,
+        int queueCapacity,
+        String waitStrategy,
+        int pushBatchSize,
+        int pushLingerMicros,
+        String dataDir,
+        Durability durability,
+        int commitIntervalMicros,
+        int commitBatchBytes,
+        boolean persistTopology
 ) {
 
+    public static final String TRANSPORT_BLOCKING = "blocking";
+    public static final String TRANSPORT_NIO = "nio";
+    public static final String QUEUE_LINKED = "linked";
+    public static final String QUEUE_RING = "ring";
+    public static final String DEFAULT_DATA_DIR = "data";
+
+    public BrokerConfig(String componentId, String host, int port, String domain, String dnsHost, int dnsPort) {
+        this(componentId, host, port, domain, dnsHost, dnsPort,
+                TRANSPORT_BLOCKING, Runtime.getRuntime().availableProcessors(), ThreadingMode.PLATFORM,
+                QUEUE_LINKED, 65536, "blocking", 128, 0, DEFAULT_DATA_DIR, Durability.OS_BUFFERED, 0, 1024 * 1024,
+                false);
+    }
+
+    public boolean usesNioTransport() {
+        return TRANSPORT_NIO.equals(transport);
+    }
+
+    public boolean usesRingQueues() {
+        return QUEUE_RING.equals(queueType);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -18,9 +52,22 @@ public record BrokerConfig(
         BrokerConfig that = (BrokerConfig) o;
         return dnsPort == that.dnsPort &&
                 port == that.port &&
+                ioThreads == that.ioThreads &&
+                queueCapacity == that.queueCapacity &&
+                pushBatchSize == that.pushBatchSize &&
+                pushLingerMicros == that.pushLingerMicros &&
                 Objects.equals(dnsHost, that.dnsHost) &&
                 Objects.equals(domain, that.domain) &&
                 Objects.equals(host, that.host) &&
-                Objects.equals(componentId, that.componentId);
+                Objects.equals(componentId, that.componentId) &&
+                Objects.equals(transport, that.transport) &&
+                threading == that.threading &&
+                Objects.equals(queueType, that.queueType) &&
+                Objects.equals(waitStrategy, that.waitStrategy) &&
+                Objects.equals(dataDir, that.dataDir) &&
+                durability == that.durability &&
+                commitIntervalMicros == that.commitIntervalMicros &&
+                commitBatchBytes == that.commitBatchBytes &&
+                persistTopology == that.persistTopology;
     }
 }
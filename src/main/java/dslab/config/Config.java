@@ -56,4 +56,27 @@ public final class Config {
 
         return (int) properties.get(key);
     }
+
+    /**
+     * Returns the value as String for the given key, or the given default if the key is not present.
+     *
+     * @param key the property's key
+     * @param defaultValue the value returned if the property is not set
+     * @return String value of the property
+     */
+    public String getString(String key, String defaultValue) {
+        return bundle.containsKey(key) ? getString(key) : defaultValue;
+    }
+
+    /**
+     * Returns the value as {@code int} for the given key, or the given default if the key is not present.
+     *
+     * @param key the property's key
+     * @param defaultValue the value returned if the property is not set
+     * @return int value of the property
+     * @throws NumberFormatException if the String cannot be parsed to an Integer
+     */
+    public int getInt(String key, int defaultValue) {
+        return bundle.containsKey(key) ? getInt(key) : defaultValue;
+    }
 }
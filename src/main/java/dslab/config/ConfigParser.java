@@ -17,12 +17,29 @@ public class ConfigParser {
                 config.getInt("broker.port"),
                 config.getString("broker.domain"),
                 config.getString("dns.host"),
-                config.getInt("dns.port")
+                config.getInt("dns.port"),
+                config.getString("broker.transport", BrokerConfig.TRANSPORT_BLOCKING),
+                config.getInt("broker.io-threads", Runtime.getRuntime().availableProcessors()),
+                ThreadingMode.parse(config.getString("broker.threading", "platform")),
+                config.getString("broker.queue-type", BrokerConfig.QUEUE_LINKED),
+                config.getInt("broker.queue-capacity", 65536),
+                config.getString("broker.wait-strategy", "blocking"),
+                config.getInt("broker.push-batch-size", 128),
+                config.getInt("broker.push-linger-us", 0),
+                config.getString("broker.data-dir", BrokerConfig.DEFAULT_DATA_DIR),
+                Durability.parse(config.getString("broker.durability", "os-buffered")),
+                config.getInt("broker.commit-interval-us", 0),
+                config.getInt("broker.commit-batch-bytes", 1024 * 1024),
+                Boolean.parseBoolean(config.getString("broker.persist-topology", "false"))
         );
     }
 
     public DNSServerConfig toDNSServerConfig() {
-        return new DNSServerConfig(componentId, config.getInt("dns.port"));
+        return new DNSServerConfig(
+                componentId,
+                config.getInt("dns.port"),
+                ThreadingMode.parse(config.getString("dns.threading", "platform"))
+        );
     }
 
 }
@@ -2,7 +2,11 @@ package dslab.config;
 
 import java.util.Objects;
 
-public record DNSServerConfig(String componentId, int port) {
+public record DNSServerConfig(String componentId, int port, ThreadingMode threading) {
+
+    public DNSServerConfig(String componentId, int port) {
+        this(componentId, port, ThreadingMode.PLATFORM);
+    }
 
     @Override
     public boolean equals(Object o) {
@@ -10,6 +14,7 @@ public record DNSServerConfig(String componentId, int port) {
         if (o == null || getClass() != o.getClass()) return false;
         DNSServerConfig that = (DNSServerConfig) o;
         return port == that.port &&
-                Objects.equals(componentId, that.componentId);
+                Objects.equals(componentId, that.componentId) &&
+                threading == that.threading;
     }
 }
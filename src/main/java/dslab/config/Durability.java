@@ -0,0 +1,28 @@
+package dslab.config;
+
+/**
+ * When a publish to a durable queue is confirmed with {@code ok}.
+ */
+public enum Durability {
+    /**
+     * Right away; records are written to the commit log in the background.
+     */
+    NONE,
+    /**
+     * Once the record was written to the commit log, i.e. it survives a broker crash but not an OS crash.
+     */
+    OS_BUFFERED,
+    /**
+     * Once the record was forced to the storage device.
+     */
+    FSYNC;
+
+    public static Durability parse(String value) {
+        return switch (value) {
+            case "none" -> NONE;
+            case "os-buffered" -> OS_BUFFERED;
+            case "fsync" -> FSYNC;
+            default -> throw new IllegalArgumentException("unknown durability: " + value);
+        };
+    }
+}
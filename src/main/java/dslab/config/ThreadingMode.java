@@ -0,0 +1,37 @@
+package dslab.config;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Selects whether connection handlers and subscriptions run on platform or virtual threads.
+ */
+public enum ThreadingMode {
+    PLATFORM,
+    VIRTUAL;
+
+    public static ThreadingMode parse(String value) {
+        return ThreadingMode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns a factory for threads named {@code <prefix><n>} of this mode.
+     */
+    public ThreadFactory threadFactory(String prefix) {
+        return this == VIRTUAL
+                ? Thread.ofVirtual().name(prefix, 0).factory()
+                : Thread.ofPlatform().name(prefix, 0).factory();
+    }
+
+    /**
+     * Returns an executor that runs every submitted task on its own (or a reused idle) thread,
+     * so a blocked handler never starves other connections.
+     */
+    public ExecutorService newPerTaskExecutor(String prefix) {
+        return this == VIRTUAL
+                ? Executors.newThreadPerTaskExecutor(threadFactory(prefix))
+                : Executors.newCachedThreadPool(threadFactory(prefix));
+    }
+}
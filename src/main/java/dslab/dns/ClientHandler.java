@@ -28,7 +28,14 @@ public class ClientHandler implements Runnable {
         while (shouldRun) {
             String line = this.readFromClient();
 
-            if (line == null || line.length() != line.strip().length()) {
+            // end of stream or a broken connection, nothing will arrive anymore
+            if (line == null) {
+                System.out.println("Client disconnected.");
+                this.closeResources();
+                return;
+            }
+
+            if (line.length() != line.strip().length()) {
                 continue;
             }
 
@@ -42,8 +49,6 @@ public class ClientHandler implements Runnable {
                 default -> this.writeToClient("unknown command: " + line);
             }
         }
-
-        this.handleExit(new String[]{"exit"});
     }
 
     private void handleExit(String[] command) {
@@ -53,6 +58,11 @@ public class ClientHandler implements Runnable {
         }
 
         this.writeToClient("ok bye");
+        this.closeResources();
+        shouldRun = false; // Signal the run loop to exit
+    }
+
+    private void closeResources() {
         try {
             this.reader.close();
             this.writer.close();
@@ -60,8 +70,6 @@ public class ClientHandler implements Runnable {
         } catch (IOException e) {
             System.err.println("error: failed closing resources.");
         }
-
-        shouldRun = false; // Signal the run loop to exit
     }
 
     private void handleResolve(String[] command) {
@@ -2,7 +2,6 @@ package dslab.dns;
 
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.io.IOException;
 import java.net.Socket;
 import java.net.ServerSocket;
@@ -19,7 +18,8 @@ public class DNSServer implements IDNSServer {
 
     public DNSServer(DNSServerConfig config) {
         this.isRunning = true;
-        this.threadPool = Executors.newWorkStealingPool();
+        // one thread per connection: idle telnet sessions must not starve resolve requests
+        this.threadPool = config.threading().newPerTaskExecutor(config.componentId() + "-client-");
         try {
             this.serverSocket = new ServerSocket(config.port());
         } catch (IOException e) {
@@ -0,0 +1,69 @@
+package dslab.assignment2.broker;
+
+import dslab.util.Constants;
+import dslab.util.Global;
+import dslab.util.helper.TelnetClientHelper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static dslab.util.CommandBuilder.exchange;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BatchPublishTest extends BaseSingleBrokerTest {
+
+    private final String exchangeName = String.format("exchange-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+    private final String queueName = String.format("queue-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+
+    private TelnetClientHelper publisher;
+    private TelnetClientHelper subscriber;
+
+    @Override
+    protected void initTelnetClientHelpers() throws IOException {
+        publisher = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+        subscriber = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+
+        publisher.connectAndReadResponse();
+        subscriber.connectAndReadResponse();
+    }
+
+    @Override
+    protected void closeTelnetClientHelpers() throws IOException {
+        publisher.disconnect();
+        subscriber.disconnect();
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void publish_batch_delivers_all_messages_in_order() throws IOException {
+        final int messageCount = 500;
+        subscriber.subscribe(exchangeName, "direct", queueName, "batch");
+        publisher.sendCommandAndReadResponse(exchange("direct", exchangeName));
+
+        StringBuilder batch = new StringBuilder("publish-batch batch %d".formatted(messageCount));
+        for (int i = 0; i < messageCount; i++)
+            batch.append("\nMESSAGE-").append(i);
+
+        assertEquals("ok", publisher.sendCommandAndReadResponse(batch.toString()));
+        for (int i = 0; i < messageCount; i++)
+            assertEquals("MESSAGE-" + i, subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void publish_batch_without_exchange_consumes_batch_and_fails() throws IOException {
+        assertThat(publisher.sendCommandAndReadResponse("publish-batch key 2\nfirst\nsecond")).contains("error");
+        assertEquals("ok", publisher.sendCommandAndReadResponse(exchange("direct", exchangeName)));
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void publish_batch_with_invalid_count_fails() throws IOException {
+        publisher.sendCommandAndReadResponse(exchange("direct", exchangeName));
+        assertThat(publisher.sendCommandAndReadResponse("publish-batch key 0")).contains("error");
+        assertThat(publisher.sendCommandAndReadResponse("publish-batch key many")).contains("error");
+    }
+}
@@ -0,0 +1,124 @@
+package dslab.assignment2.broker;
+
+import dslab.util.Constants;
+import dslab.util.Global;
+import dslab.util.helper.TelnetClientHelper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static dslab.util.CommandBuilder.bind;
+import static dslab.util.CommandBuilder.exchange;
+import static dslab.util.CommandBuilder.queue;
+import static dslab.util.CommandBuilder.subscribe;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BindingRemovalTest extends BaseSingleBrokerTest {
+
+    private final String exchangeName = String.format("exchange-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+    private final String queueName = String.format("queue-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+
+    private TelnetClientHelper publisher;
+    private TelnetClientHelper subscriber;
+
+    @Override
+    protected void initTelnetClientHelpers() throws IOException {
+        publisher = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+        subscriber = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+
+        publisher.connectAndReadResponse();
+        subscriber.connectAndReadResponse();
+    }
+
+    @Override
+    protected void closeTelnetClientHelpers() throws IOException {
+        publisher.disconnect();
+        subscriber.disconnect();
+    }
+
+    private void declare(String type, String... bindingKeys) throws IOException {
+        subscriber.sendCommandAndReadResponse(exchange(type, exchangeName));
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(queue(queueName)));
+        for (String bindingKey : bindingKeys)
+            assertEquals("ok", subscriber.sendCommandAndReadResponse(bind(bindingKey)));
+        publisher.sendCommandAndReadResponse(exchange(type, exchangeName));
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void unbound_key_no_longer_routes_to_queue() throws IOException {
+        declare("direct", "removed", "kept");
+        assertEquals("ok", subscriber.sendCommandAndReadResponse("unbind removed"));
+
+        assertEquals("ok", publisher.publish("removed", "MESSAGE-0"));
+        assertEquals("ok", publisher.publish("kept", "MESSAGE-1"));
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(subscribe()));
+        assertEquals("MESSAGE-1", subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void unbinding_topic_pattern_keeps_other_patterns() throws IOException {
+        declare("topic", "a.*", "a.#", "done");
+        assertEquals("ok", subscriber.sendCommandAndReadResponse("unbind a.*"));
+        assertEquals("ok", publisher.publish("a.b", "MESSAGE-0"));
+
+        assertEquals("ok", subscriber.sendCommandAndReadResponse("unbind a.#"));
+        assertEquals("ok", publisher.publish("a.b", "MESSAGE-1"));
+        assertEquals("ok", publisher.publish("done", "MESSAGE-2"));
+
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(subscribe()));
+        assertEquals("MESSAGE-0", subscriber.readResponse());
+        assertEquals("MESSAGE-2", subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void deleted_queue_is_removed_from_exchanges_and_starts_empty() throws IOException {
+        declare("fanout", "any");
+        assertEquals("ok", publisher.publish("any", "MESSAGE-0"));
+        assertEquals("ok", publisher.sendCommandAndReadResponse("queue-delete " + queueName));
+
+        assertEquals("error, queue was deleted", subscriber.sendCommandAndReadResponse(bind("any")));
+        assertThat(publisher.sendCommandAndReadResponse("queue-delete " + queueName)).startsWith("error");
+
+        // declaring it again creates a new, empty queue that is not bound to the exchange
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(queue(queueName)));
+        assertEquals("ok", publisher.publish("any", "MESSAGE-1"));
+        publisher.sendCommandAndReadResponse(exchange("default", "default"));
+        assertEquals("ok", publisher.publish(queueName, "MESSAGE-2"));
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(subscribe()));
+        assertEquals("MESSAGE-2", subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void deleted_exchange_drops_bindings_and_can_be_declared_again() throws IOException {
+        declare("direct", "key");
+        assertEquals("ok", subscriber.sendCommandAndReadResponse("exchange-delete " + exchangeName));
+
+        assertEquals("ok", publisher.publish("key", "MESSAGE-0"));
+        assertEquals("error, exchange was deleted", subscriber.sendCommandAndReadResponse(bind("key")));
+
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(exchange("fanout", exchangeName)));
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(bind("any")));
+        publisher.sendCommandAndReadResponse(exchange("fanout", exchangeName));
+        assertEquals("ok", publisher.publish("key", "MESSAGE-1"));
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(subscribe()));
+        assertEquals("MESSAGE-1", subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void default_exchange_cannot_be_deleted_or_unbound() throws IOException {
+        assertThat(publisher.sendCommandAndReadResponse("exchange-delete default")).startsWith("error");
+        assertThat(publisher.sendCommandAndReadResponse("exchange-delete unknown-" + exchangeName)).startsWith("error");
+
+        subscriber.sendCommandAndReadResponse(exchange("default", "default"));
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(queue(queueName)));
+        assertThat(subscriber.sendCommandAndReadResponse("unbind " + queueName)).startsWith("error");
+    }
+}
@@ -0,0 +1,126 @@
+package dslab.assignment2.broker;
+
+import dslab.util.Constants;
+import dslab.util.Global;
+import dslab.util.helper.TelnetClientHelper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static dslab.util.CommandBuilder.bind;
+import static dslab.util.CommandBuilder.exchange;
+import static dslab.util.CommandBuilder.queue;
+import static dslab.util.CommandBuilder.subscribe;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BoundedQueueTest extends BaseSingleBrokerTest {
+
+    private final String exchangeName = String.format("exchange-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+    private final String queueName = String.format("queue-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+
+    private TelnetClientHelper publisher;
+    private TelnetClientHelper subscriber;
+
+    @Override
+    protected void initTelnetClientHelpers() throws IOException {
+        publisher = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+        subscriber = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+
+        publisher.connectAndReadResponse();
+        subscriber.connectAndReadResponse();
+    }
+
+    @Override
+    protected void closeTelnetClientHelpers() throws IOException {
+        publisher.disconnect();
+        subscriber.disconnect();
+    }
+
+    private void declareQueue(String arguments) throws IOException {
+        subscriber.sendCommandAndReadResponse(exchange("direct", exchangeName));
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(queue(queueName) + " " + arguments));
+        subscriber.sendCommandAndReadResponse(bind("bounded"));
+        publisher.sendCommandAndReadResponse(exchange("direct", exchangeName));
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void drop_head_discards_oldest_messages() throws IOException {
+        declareQueue("max-length=2");
+        for (int i = 0; i < 4; i++)
+            assertEquals("ok", publisher.publish("bounded", "MESSAGE-" + i));
+
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(subscribe()));
+        assertEquals("MESSAGE-2", subscriber.readResponse());
+        assertEquals("MESSAGE-3", subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void reject_publish_returns_error_to_publisher() throws IOException {
+        declareQueue("max-bytes=18 overflow=reject-publish");
+        assertEquals("ok", publisher.publish("bounded", "MESSAGE-0"));
+        assertEquals("ok", publisher.publish("bounded", "MESSAGE-1"));
+        assertThat(publisher.publish("bounded", "MESSAGE-2")).startsWith("error");
+
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(subscribe()));
+        assertEquals("MESSAGE-0", subscriber.readResponse());
+        assertEquals("MESSAGE-1", subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void block_publish_rejects_after_timeout() throws IOException {
+        declareQueue("max-length=1 overflow=block-publish block-timeout-ms=100");
+        assertEquals("ok", publisher.publish("bounded", "MESSAGE-0"));
+        assertThat(publisher.publish("bounded", "MESSAGE-1")).startsWith("error");
+
+        // a consumer makes room again
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(subscribe()));
+        assertEquals("MESSAGE-0", subscriber.readResponse());
+        assertEquals("ok", publisher.publish("bounded", "MESSAGE-2"));
+        assertEquals("MESSAGE-2", subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void expired_messages_make_room_without_a_consumer() throws Exception {
+        declareQueue("max-length=2 overflow=reject-publish message-ttl=100");
+        assertEquals("ok", publisher.publish("bounded", "MESSAGE-0"));
+        assertEquals("ok", publisher.publish("bounded", "MESSAGE-1"));
+        assertThat(publisher.publish("bounded", "MESSAGE-2")).startsWith("error");
+
+        // nobody consumes, the expiry alone has to release them
+        Thread.sleep(300);
+        assertEquals("ok", publisher.publish("bounded", "MESSAGE-3"));
+        assertEquals("ok", publisher.publish("bounded", "MESSAGE-4"));
+
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(subscribe()));
+        assertEquals("MESSAGE-3", subscriber.readResponse());
+        assertEquals("MESSAGE-4", subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void expired_message_unblocks_publisher_without_a_consumer() throws IOException {
+        declareQueue("max-length=1 overflow=block-publish block-timeout-ms=2000 message-ttl=100");
+        assertEquals("ok", publisher.publish("bounded", "MESSAGE-0"));
+        long start = System.nanoTime();
+        assertEquals("ok", publisher.publish("bounded", "MESSAGE-1"));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1000);
+
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(subscribe()));
+        assertEquals("MESSAGE-1", subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void invalid_limits_are_rejected() throws IOException {
+        subscriber.sendCommandAndReadResponse(exchange("direct", exchangeName));
+        assertThat(subscriber.sendCommandAndReadResponse(queue(queueName) + " max-length=0")).startsWith("error");
+        assertThat(subscriber.sendCommandAndReadResponse(queue(queueName) + " overflow=never")).startsWith("error");
+    }
+}
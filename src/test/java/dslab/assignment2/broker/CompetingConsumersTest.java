@@ -0,0 +1,67 @@
+package dslab.assignment2.broker;
+
+import dslab.util.Constants;
+import dslab.util.Global;
+import dslab.util.helper.TelnetClientHelper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static dslab.util.CommandBuilder.exchange;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class CompetingConsumersTest extends BaseSingleBrokerTest {
+
+    private final String exchangeName = String.format("exchange-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+    private final String queueName = String.format("queue-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+
+    private TelnetClientHelper publisher;
+    private TelnetClientHelper consumer1;
+    private TelnetClientHelper consumer2;
+
+    @Override
+    protected void initTelnetClientHelpers() throws IOException {
+        publisher = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+        consumer1 = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+        consumer2 = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+
+        publisher.connectAndReadResponse();
+        consumer1.connectAndReadResponse();
+        consumer2.connectAndReadResponse();
+    }
+
+    @Override
+    protected void closeTelnetClientHelpers() throws IOException {
+        publisher.disconnect();
+        consumer1.disconnect();
+        consumer2.disconnect();
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void messages_of_a_shared_queue_are_dispatched_round_robin() throws IOException {
+        final int messageCount = 100;
+        consumer1.subscribe(exchangeName, "direct", queueName, "shared");
+        consumer2.subscribe(exchangeName, "direct", queueName, "shared");
+
+        publisher.sendCommandAndReadResponse(exchange("direct", exchangeName));
+        for (int i = 0; i < messageCount; i++)
+            assertEquals("ok", publisher.publish("shared", "MESSAGE-" + i));
+
+        List<String> received = new ArrayList<>();
+        for (int i = 0; i < messageCount / 2; i++) {
+            received.add(consumer1.readResponse());
+            received.add(consumer2.readResponse());
+        }
+
+        List<String> published = new ArrayList<>();
+        for (int i = 0; i < messageCount; i++)
+            published.add("MESSAGE-" + i);
+        assertThat(received).containsExactlyInAnyOrderElementsOf(published);
+    }
+}
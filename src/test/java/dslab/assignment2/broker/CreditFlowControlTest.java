@@ -0,0 +1,96 @@
+package dslab.assignment2.broker;
+
+import dslab.util.Constants;
+import dslab.util.Global;
+import dslab.util.helper.TelnetClientHelper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static dslab.util.CommandBuilder.bind;
+import static dslab.util.CommandBuilder.exchange;
+import static dslab.util.CommandBuilder.queue;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class CreditFlowControlTest extends BaseSingleBrokerTest {
+
+    private final String exchangeName = String.format("exchange-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+    private final String queueName = String.format("queue-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+
+    private TelnetClientHelper publisher;
+    private TelnetClientHelper subscriber;
+
+    @Override
+    protected void initTelnetClientHelpers() throws IOException {
+        publisher = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+        subscriber = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+
+        publisher.connectAndReadResponse();
+        subscriber.connectAndReadResponse();
+    }
+
+    @Override
+    protected void closeTelnetClientHelpers() throws IOException {
+        publisher.disconnect();
+        subscriber.disconnect();
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void subscription_delivers_only_granted_messages() throws IOException {
+        subscriber.sendCommandAndReadResponse(exchange("direct", exchangeName));
+        subscriber.sendCommandAndReadResponse(queue(queueName));
+        subscriber.sendCommandAndReadResponse(bind("credit"));
+        assertEquals("ok", subscriber.sendCommandAndReadResponse("subscribe 2"));
+
+        publisher.sendCommandAndReadResponse(exchange("direct", exchangeName));
+        for (int i = 0; i < 6; i++)
+            assertEquals("ok", publisher.publish("credit", "MESSAGE-" + i));
+
+        assertEquals("MESSAGE-0", subscriber.readResponse());
+        assertEquals("MESSAGE-1", subscriber.readResponse());
+        assertEquals("MESSAGE-2", subscriber.sendCommandAndReadResponse("credit 2"));
+        assertEquals("MESSAGE-3", subscriber.readResponse());
+
+        // no credit left, so the remaining messages stay in the queue
+        assertEquals("ok", subscriber.sendCommandAndReadResponse("stop"));
+        assertEquals("ok", subscriber.sendCommandAndReadResponse("subscribe"));
+        assertEquals("MESSAGE-4", subscriber.readResponse());
+        assertEquals("MESSAGE-5", subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void words_starting_with_credit_end_the_subscription() throws IOException {
+        subscriber.sendCommandAndReadResponse(exchange("direct", exchangeName));
+        subscriber.sendCommandAndReadResponse(queue(queueName));
+        subscriber.sendCommandAndReadResponse(bind("credit"));
+        publisher.sendCommandAndReadResponse(exchange("direct", exchangeName));
+        for (int i = 0; i < 4; i++)
+            assertEquals("ok", publisher.publish("credit", "MESSAGE-" + i));
+
+        // only the exact word grants credit, anything else is input that ends the subscription
+        for (String input : new String[]{"credits 5", "creditx"}) {
+            assertEquals("ok", subscriber.sendCommandAndReadResponse("subscribe 1"));
+            String delivered = subscriber.readResponse();
+            assertThat(delivered).startsWith("MESSAGE-");
+            assertEquals("ok", subscriber.sendCommandAndReadResponse(input));
+        }
+
+        assertEquals("ok", subscriber.sendCommandAndReadResponse("subscribe"));
+        assertEquals("MESSAGE-2", subscriber.readResponse());
+        assertEquals("MESSAGE-3", subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void subscribe_with_invalid_prefetch_fails() throws IOException {
+        subscriber.sendCommandAndReadResponse(exchange("direct", exchangeName));
+        subscriber.sendCommandAndReadResponse(queue(queueName));
+        assertThat(subscriber.sendCommandAndReadResponse("subscribe 0")).startsWith("error");
+        assertThat(subscriber.sendCommandAndReadResponse("subscribe many")).startsWith("error");
+    }
+}
@@ -0,0 +1,98 @@
+package dslab.assignment2.broker;
+
+import dslab.util.Constants;
+import dslab.util.Global;
+import dslab.util.helper.TelnetClientHelper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static dslab.util.CommandBuilder.bind;
+import static dslab.util.CommandBuilder.exchange;
+import static dslab.util.CommandBuilder.queue;
+import static dslab.util.CommandBuilder.subscribe;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ExclusiveQueueTest extends BaseSingleBrokerTest {
+
+    private final String exchangeName = String.format("exchange-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+    private final String queueName = String.format("queue-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+
+    private TelnetClientHelper publisher;
+    private TelnetClientHelper subscriber;
+
+    @Override
+    protected void initTelnetClientHelpers() throws IOException {
+        publisher = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+        subscriber = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+
+        publisher.connectAndReadResponse();
+        subscriber.connectAndReadResponse();
+    }
+
+    @Override
+    protected void closeTelnetClientHelpers() throws IOException {
+        publisher.disconnect();
+        subscriber.disconnect();
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void exclusive_queue_is_refused_to_other_connections() throws IOException {
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(queue(queueName) + " exclusive"));
+
+        assertEquals("error, queue is exclusive to another connection",
+                publisher.sendCommandAndReadResponse(queue(queueName)));
+        assertThat(publisher.sendCommandAndReadResponse("queue-delete " + queueName)).startsWith("error");
+
+        // publishing to it is allowed
+        publisher.sendCommandAndReadResponse(exchange("default", "default"));
+        assertEquals("ok", publisher.publish(queueName, "MESSAGE-0"));
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(subscribe()));
+        assertEquals("MESSAGE-0", subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void exclusive_queue_is_deleted_when_its_connection_closes() throws Exception {
+        TelnetClientHelper owner = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+        owner.connectAndReadResponse();
+        owner.sendCommandAndReadResponse(exchange("direct", exchangeName));
+        assertEquals("ok", owner.sendCommandAndReadResponse(queue(queueName) + " exclusive"));
+        assertEquals("ok", owner.sendCommandAndReadResponse(bind("reply")));
+        publisher.sendCommandAndReadResponse(exchange("direct", exchangeName));
+        assertEquals("ok", publisher.publish("reply", "MESSAGE-0"));
+        owner.disconnect();
+        Thread.sleep(200);
+
+        // the name is free again and the old binding is gone
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(queue(queueName)));
+        assertEquals("ok", publisher.publish("reply", "MESSAGE-1"));
+        publisher.sendCommandAndReadResponse(exchange("default", "default"));
+        assertEquals("ok", publisher.publish(queueName, "MESSAGE-2"));
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(subscribe()));
+        assertEquals("MESSAGE-2", subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void auto_delete_queue_is_deleted_after_last_subscription() throws IOException {
+        subscriber.sendCommandAndReadResponse(exchange("direct", exchangeName));
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(queue(queueName) + " auto-delete"));
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(bind("events")));
+
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(subscribe()));
+        assertEquals("ok", subscriber.sendCommandAndReadResponse("stop"));
+
+        assertEquals("error, queue was deleted", subscriber.sendCommandAndReadResponse(bind("events")));
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void exclusive_queue_cannot_be_durable() throws IOException {
+        assertThat(subscriber.sendCommandAndReadResponse(queue(queueName) + " exclusive durable")).startsWith("error");
+    }
+}
@@ -0,0 +1,113 @@
+package dslab.assignment2.broker;
+
+import dslab.util.Constants;
+import dslab.util.Global;
+import dslab.util.helper.TelnetClientHelper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static dslab.util.CommandBuilder.bind;
+import static dslab.util.CommandBuilder.exchange;
+import static dslab.util.CommandBuilder.queue;
+import static dslab.util.CommandBuilder.subscribe;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class HeadersExchangeTest extends BaseSingleBrokerTest {
+
+    private final String exchangeName = String.format("exchange-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+    private final String queueName = String.format("queue-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+
+    private TelnetClientHelper publisher;
+    private TelnetClientHelper subscriber;
+
+    @Override
+    protected void initTelnetClientHelpers() throws IOException {
+        publisher = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+        subscriber = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+
+        publisher.connectAndReadResponse();
+        subscriber.connectAndReadResponse();
+    }
+
+    @Override
+    protected void closeTelnetClientHelpers() throws IOException {
+        publisher.disconnect();
+        subscriber.disconnect();
+    }
+
+    private void declare(String... bindingKeys) throws IOException {
+        subscriber.sendCommandAndReadResponse(exchange("headers", exchangeName));
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(queue(queueName)));
+        for (String bindingKey : bindingKeys)
+            assertEquals("ok", subscriber.sendCommandAndReadResponse(bind(bindingKey)));
+        publisher.sendCommandAndReadResponse(exchange("headers", exchangeName));
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void match_all_requires_every_header() throws IOException {
+        declare("format=pdf,type=report");
+
+        assertEquals("ok", publisher.publish("format=pdf", "MESSAGE-0"));
+        assertEquals("ok", publisher.publish("type=report,lang=de,format=pdf", "MESSAGE-1"));
+        assertEquals("ok", publisher.publish("format=pdf,type=invoice", "MESSAGE-2"));
+        assertEquals("ok", publisher.publish("type=report,format=pdf", "MESSAGE-3"));
+
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(subscribe()));
+        assertEquals("MESSAGE-1", subscriber.readResponse());
+        assertEquals("MESSAGE-3", subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void match_any_requires_one_header() throws IOException {
+        declare("x-match=any,format=pdf,type=report");
+
+        assertEquals("ok", publisher.publish("lang=de", "MESSAGE-0"));
+        assertEquals("ok", publisher.publish("type=report", "MESSAGE-1"));
+        assertEquals("ok", publisher.publish("format=pdf,type=report", "MESSAGE-2"));
+
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(subscribe()));
+        assertEquals("MESSAGE-1", subscriber.readResponse());
+        assertEquals("MESSAGE-2", subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void repeated_header_does_not_count_twice() throws IOException {
+        declare("format=pdf,type=report");
+
+        assertEquals("ok", publisher.publish("format=pdf,format=pdf", "MESSAGE-0"));
+        assertEquals("ok", publisher.publish("format=pdf,type=report", "MESSAGE-1"));
+
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(subscribe()));
+        assertEquals("MESSAGE-1", subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void unbind_ignores_header_order() throws IOException {
+        declare("x-match=any,format=pdf,type=report", "lang=de");
+        assertEquals("ok", subscriber.sendCommandAndReadResponse("unbind type=report,format=pdf,x-match=any"));
+
+        assertEquals("ok", publisher.publish("format=pdf", "MESSAGE-0"));
+        assertEquals("ok", publisher.publish("lang=de", "MESSAGE-1"));
+
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(subscribe()));
+        assertEquals("MESSAGE-1", subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void invalid_binding_key_is_rejected() throws IOException {
+        declare();
+
+        assertThat(subscriber.sendCommandAndReadResponse(bind("format"))).startsWith("error");
+        assertThat(subscriber.sendCommandAndReadResponse(bind("format=pdf,format=doc"))).startsWith("error");
+        assertThat(subscriber.sendCommandAndReadResponse(bind("x-match=some,format=pdf"))).startsWith("error");
+    }
+}
@@ -0,0 +1,66 @@
+package dslab.assignment2.broker;
+
+import dslab.util.Constants;
+import dslab.util.Global;
+import dslab.util.helper.TelnetClientHelper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static dslab.util.CommandBuilder.bind;
+import static dslab.util.CommandBuilder.exchange;
+import static dslab.util.CommandBuilder.queue;
+import static dslab.util.CommandBuilder.subscribe;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LazyQueueTest extends BaseSingleBrokerTest {
+
+    private final String exchangeName = String.format("exchange-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+    private final String queueName = String.format("queue-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+
+    private TelnetClientHelper publisher;
+    private TelnetClientHelper subscriber;
+
+    @Override
+    protected void initTelnetClientHelpers() throws IOException {
+        publisher = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+        subscriber = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+
+        publisher.connectAndReadResponse();
+        subscriber.connectAndReadResponse();
+    }
+
+    @Override
+    protected void closeTelnetClientHelpers() throws IOException {
+        publisher.disconnect();
+        subscriber.disconnect();
+    }
+
+    @Test
+    @Timeout(value = 5000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void lazy_queue_delivers_paged_out_backlog_in_order() throws IOException {
+        // more than both in-memory windows, so the middle of the backlog is paged out
+        final int messageCount = 2500;
+        subscriber.sendCommandAndReadResponse(exchange("direct", exchangeName));
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(queue(queueName) + " lazy"));
+        subscriber.sendCommandAndReadResponse(bind("lazy"));
+
+        publisher.sendCommandAndReadResponse(exchange("direct", exchangeName));
+        for (int i = 0; i < messageCount; i++)
+            assertEquals("ok", publisher.publish("lazy", "MESSAGE-" + i));
+
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(subscribe()));
+        for (int i = 0; i < messageCount; i++)
+            assertEquals("MESSAGE-" + i, subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void durable_lazy_queue_is_rejected() throws IOException {
+        subscriber.sendCommandAndReadResponse(exchange("direct", exchangeName));
+        assertThat(subscriber.sendCommandAndReadResponse(queue(queueName) + " durable lazy")).startsWith("error");
+    }
+}
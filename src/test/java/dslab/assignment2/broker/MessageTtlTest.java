@@ -0,0 +1,98 @@
+package dslab.assignment2.broker;
+
+import dslab.util.Constants;
+import dslab.util.Global;
+import dslab.util.helper.TelnetClientHelper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static dslab.util.CommandBuilder.bind;
+import static dslab.util.CommandBuilder.exchange;
+import static dslab.util.CommandBuilder.publish;
+import static dslab.util.CommandBuilder.queue;
+import static dslab.util.CommandBuilder.subscribe;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MessageTtlTest extends BaseSingleBrokerTest {
+
+    private final String exchangeName = String.format("exchange-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+    private final String queueName = String.format("queue-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+
+    private TelnetClientHelper publisher;
+    private TelnetClientHelper subscriber;
+
+    @Override
+    protected void initTelnetClientHelpers() throws IOException {
+        publisher = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+        subscriber = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+
+        publisher.connectAndReadResponse();
+        subscriber.connectAndReadResponse();
+    }
+
+    @Override
+    protected void closeTelnetClientHelpers() throws IOException {
+        publisher.disconnect();
+        subscriber.disconnect();
+    }
+
+    private void declareQueue(String arguments) throws IOException {
+        subscriber.sendCommandAndReadResponse(exchange("direct", exchangeName));
+        assertEquals("ok", subscriber.sendCommandAndReadResponse((queue(queueName) + " " + arguments).trim()));
+        subscriber.sendCommandAndReadResponse(bind("ttl"));
+        publisher.sendCommandAndReadResponse(exchange("direct", exchangeName));
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void expired_messages_are_not_delivered() throws Exception {
+        declareQueue("");
+        assertEquals("ok", publisher.sendCommandAndReadResponse(publish("ttl", "MESSAGE-0") + " 100"));
+        assertEquals("ok", publisher.publish("ttl", "MESSAGE-1"));
+        Thread.sleep(300);
+
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(subscribe()));
+        assertEquals("MESSAGE-1", subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void queue_message_ttl_applies_to_every_message() throws Exception {
+        declareQueue("message-ttl=100");
+        assertEquals("ok", publisher.publish("ttl", "MESSAGE-0"));
+        assertEquals("ok", publisher.sendCommandAndReadResponse(publish("ttl", "MESSAGE-1") + " 5000"));
+        Thread.sleep(300);
+        assertEquals("ok", publisher.publish("ttl", "MESSAGE-2"));
+
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(subscribe()));
+        assertEquals("MESSAGE-2", subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void unused_queue_expires() throws Exception {
+        declareQueue("expires=100");
+        assertEquals("ok", publisher.publish("ttl", "MESSAGE-0"));
+        Thread.sleep(500);
+
+        // declaring it again creates a new, empty queue
+        assertEquals("error, queue was deleted", subscriber.sendCommandAndReadResponse(bind("other")));
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(queue(queueName) + " expires=100"));
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(bind("ttl")));
+        assertEquals("ok", publisher.publish("ttl", "MESSAGE-1"));
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(subscribe()));
+        assertEquals("MESSAGE-1", subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void invalid_ttl_is_rejected() throws IOException {
+        declareQueue("");
+        assertThat(publisher.sendCommandAndReadResponse(publish("ttl", "MESSAGE") + " 0")).startsWith("error");
+        assertThat(subscriber.sendCommandAndReadResponse(queue(queueName) + "-2 message-ttl=abc")).startsWith("error");
+    }
+}
@@ -0,0 +1,180 @@
+package dslab.assignment2.broker;
+
+import dslab.ComponentFactory;
+import dslab.broker.IBroker;
+import dslab.config.BrokerConfig;
+import dslab.config.Durability;
+import dslab.config.ThreadingMode;
+import dslab.util.Constants;
+import dslab.util.Global;
+import dslab.util.Util;
+import dslab.util.helper.TelnetClientHelper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static dslab.util.CommandBuilder.bind;
+import static dslab.util.CommandBuilder.exchange;
+import static dslab.util.CommandBuilder.queue;
+import static dslab.util.CommandBuilder.subscribe;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NioBackpressureTest {
+
+    // a single event loop, so every connection shares the thread of the paused publisher
+    private static final BrokerConfig config = new BrokerConfig("broker-nio", Constants.LOCALHOST, 20090,
+            "broker-nio.at", Constants.LOCALHOST, Constants.DNS_PORT, BrokerConfig.TRANSPORT_NIO, 1,
+            ThreadingMode.PLATFORM, BrokerConfig.QUEUE_LINKED, 65536, "blocking", 128, 0,
+            BrokerConfig.DEFAULT_DATA_DIR, Durability.OS_BUFFERED, 0, 1024 * 1024, false);
+
+    private final String exchangeName = String.format("exchange-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+    private final String queueName = String.format("queue-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+
+    private IBroker broker;
+    private Thread brokerThread;
+    private TelnetClientHelper publisher;
+    private TelnetClientHelper subscriber;
+    private TelnetClientHelper other;
+
+    @BeforeEach
+    @Timeout(value = 1500, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void beforeEach() throws IOException {
+        broker = ComponentFactory.createBroker(config);
+        brokerThread = new Thread(broker);
+        brokerThread.start();
+
+        TelnetClientHelper waitForConnHelper = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+        waitForConnHelper.waitForInitConnection();
+        waitForConnHelper.disconnect();
+
+        publisher = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+        subscriber = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+        other = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+        publisher.connectAndReadResponse();
+        subscriber.connectAndReadResponse();
+        other.connectAndReadResponse();
+    }
+
+    @AfterEach
+    @Timeout(value = 1500, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void afterEach() throws InterruptedException {
+        try {
+            publisher.disconnect();
+            subscriber.disconnect();
+            other.disconnect();
+        } catch (IOException e) {
+            // ignored
+        }
+
+        broker.shutdown();
+        brokerThread.join();
+        Util.waitForTcpPortsToClose(config.port());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void full_queue_pauses_only_the_publishing_connection() throws Exception {
+        subscriber.sendCommandAndReadResponse(exchange("direct", exchangeName));
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(
+                queue(queueName) + " max-length=1 overflow=block-publish block-timeout-ms=10000"));
+        subscriber.sendCommandAndReadResponse(bind("bounded"));
+        publisher.sendCommandAndReadResponse(exchange("direct", exchangeName));
+
+        assertEquals("ok", publisher.publish("bounded", "MESSAGE-0"));
+        // accepted beyond the limit, after that the broker stops reading from the publisher
+        assertEquals("ok", publisher.publish("bounded", "MESSAGE-1"));
+        CompletableFuture<String> paused = CompletableFuture.supplyAsync(() -> {
+            try {
+                return publisher.publish("bounded", "MESSAGE-2");
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        // the event loop keeps serving everyone else in the meantime
+        for (int i = 0; i < 5; i++)
+            assertEquals("ok", other.sendCommandAndReadResponse(exchange("fanout", "other-" + i)));
+        assertFalse(paused.isDone());
+
+        // a consumer makes room again, well before the timeout
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(subscribe()));
+        assertEquals("MESSAGE-0", subscriber.readResponse());
+        assertEquals("MESSAGE-1", subscriber.readResponse());
+        assertEquals("ok", paused.get());
+        assertEquals("MESSAGE-2", subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 10000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void stalled_subscriber_leaves_its_backlog_in_the_queue() throws Exception {
+        int messages = 4000;
+        String payload = "x".repeat(4096);
+        assertEquals("ok", other.sendCommandAndReadResponse(queue(queueName)));
+
+        // subscribes without credits and never reads, the socket buffers take only a small part of the 16 MB
+        try (Socket stalled = subscribeRaw(4096)) {
+            StringBuilder commands = new StringBuilder(exchange("default", "default"));
+            for (int i = 0; i < messages; i++)
+                commands.append("\npublish ").append(queueName).append(' ').append(i).append('-').append(payload);
+            assertEquals("ok", publisher.sendCommandAndReadResponse(commands.toString()));
+            for (int i = 0; i < messages; i++)
+                assertEquals("ok", publisher.readResponse());
+
+            // any input ends the subscription, whatever was not handed over stays in the queue
+            send(stalled, "stop");
+            Thread.sleep(200);
+        }
+
+        // at most a window of messages plus what the socket buffers took left the queue
+        try (Socket next = subscribeRaw(0)) {
+            next.setSoTimeout(500);
+            BufferedReader in = reader(next);
+            int remaining = 0;
+            try {
+                while (in.readLine() != null)
+                    remaining++;
+            } catch (SocketTimeoutException e) {
+                // nothing more in the queue
+            }
+            assertTrue(remaining >= messages / 2, "only " + remaining + " messages were left in the queue");
+        }
+    }
+
+    private Socket subscribeRaw(int receiveBufferSize) throws IOException {
+        Socket socket = new Socket();
+        if (receiveBufferSize > 0)
+            socket.setReceiveBufferSize(receiveBufferSize);
+        socket.connect(new InetSocketAddress(Constants.LOCALHOST, config.port()));
+        BufferedReader in = reader(socket);
+        assertEquals("ok SMQP", in.readLine());
+        send(socket, queue(queueName));
+        assertEquals("ok", in.readLine());
+        send(socket, subscribe());
+        assertEquals("ok", in.readLine());
+        return socket;
+    }
+
+    private static BufferedReader reader(Socket socket) throws IOException {
+        // unbuffered beyond a byte, so that a later reader of the same socket loses nothing
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 1);
+    }
+
+    private static void send(Socket socket, String line) throws IOException {
+        PrintStream out = new PrintStream(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        out.println(line);
+    }
+}
@@ -0,0 +1,123 @@
+package dslab.assignment2.broker;
+
+import dslab.util.Constants;
+import dslab.util.Global;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static dslab.util.CommandBuilder.bind;
+import static dslab.util.CommandBuilder.exchange;
+import static dslab.util.CommandBuilder.queue;
+import static dslab.util.CommandBuilder.subscribe;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Sends payloads as raw bytes, so nothing on the client side decodes or re-encodes them, and expects the very same
+ * bytes to be delivered.
+ */
+public class PayloadBytesTest extends BaseSingleBrokerTest {
+
+    private final String exchangeName = String.format("exchange-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+    private final String queueName = String.format("queue-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+
+    private Socket publisher;
+    private Socket subscriber;
+
+    @Override
+    protected void initTelnetClientHelpers() throws IOException {
+        publisher = new Socket(Constants.LOCALHOST, config.port());
+        subscriber = new Socket(Constants.LOCALHOST, config.port());
+        readLine(publisher);
+        readLine(subscriber);
+    }
+
+    @Override
+    protected void closeTelnetClientHelpers() throws IOException {
+        publisher.close();
+        subscriber.close();
+    }
+
+    private static void send(Socket socket, byte[]... parts) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        for (byte[] part : parts)
+            out.write(part);
+        out.write('\n');
+        out.flush();
+    }
+
+    private static String command(Socket socket, String command) throws IOException {
+        send(socket, command.getBytes(StandardCharsets.UTF_8));
+        return new String(readLine(socket), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readLine(Socket socket) throws IOException {
+        InputStream in = socket.getInputStream();
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int b = in.read(); b != '\n'; b = in.read()) {
+            if (b < 0)
+                throw new IOException("connection closed");
+            line.write(b);
+        }
+        return line.toByteArray();
+    }
+
+    private void subscribeTo(String bindingKey) throws IOException {
+        assertEquals("ok", command(subscriber, exchange("direct", exchangeName)));
+        assertEquals("ok", command(subscriber, queue(queueName)));
+        assertEquals("ok", command(subscriber, bind(bindingKey)));
+        assertEquals("ok", command(subscriber, subscribe()));
+        assertEquals("ok", command(publisher, exchange("direct", exchangeName)));
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void non_ascii_payloads_are_delivered_byte_for_byte() throws IOException {
+        subscribeTo("bytes");
+
+        byte[][] payloads = {
+                "grüße-ñ-€-日本語-😀".getBytes(StandardCharsets.UTF_8),
+                // Latin-1 and cut off UTF-8 sequences, invalid as UTF-8 and therefore easily replaced when decoded
+                {(byte) 0xE9, 't', (byte) 0xE9},
+                {'a', (byte) 0xE2, (byte) 0x82},
+                {(byte) 0xF0, (byte) 0x9F, (byte) 0x98},
+                {(byte) 0x80, (byte) 0xBF, (byte) 0xC0, (byte) 0xFE, (byte) 0xFF},
+        };
+        for (byte[] payload : payloads) {
+            send(publisher, "publish bytes ".getBytes(StandardCharsets.UTF_8), payload);
+            assertEquals("ok", new String(readLine(publisher), StandardCharsets.UTF_8));
+        }
+        for (byte[] payload : payloads)
+            assertArrayEquals(payload, readLine(subscriber));
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void every_byte_value_survives_a_batch_body() throws IOException {
+        subscribeTo("bytes");
+
+        // a batch body is the whole line, so anything but the line terminators can be sent
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        for (int b = 0; b < 256; b++) {
+            if (b != '\n' && b != '\r')
+                all.write(b);
+        }
+        byte[] payload = all.toByteArray();
+
+        send(publisher, "publish-batch bytes 2".getBytes(StandardCharsets.UTF_8));
+        send(publisher, payload);
+        send(publisher, "ünïcödé bödy".getBytes(StandardCharsets.UTF_8));
+        assertEquals("ok", new String(readLine(publisher), StandardCharsets.UTF_8));
+
+        assertArrayEquals(payload, readLine(subscriber));
+        assertArrayEquals("ünïcödé bödy".getBytes(StandardCharsets.UTF_8), readLine(subscriber));
+    }
+}
@@ -0,0 +1,72 @@
+package dslab.assignment2.broker;
+
+import dslab.util.Constants;
+import dslab.util.Global;
+import dslab.util.helper.TelnetClientHelper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static dslab.util.CommandBuilder.exchange;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class PipeliningTest extends BaseSingleBrokerTest {
+
+    private final String exchangeName = String.format("exchange-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+    private final String queueName = String.format("queue-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+
+    private TelnetClientHelper publisher;
+    private TelnetClientHelper subscriber;
+
+    @Override
+    protected void initTelnetClientHelpers() throws IOException {
+        publisher = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+        subscriber = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+
+        publisher.connectAndReadResponse();
+        subscriber.connectAndReadResponse();
+    }
+
+    @Override
+    protected void closeTelnetClientHelpers() throws IOException {
+        publisher.disconnect();
+        subscriber.disconnect();
+    }
+
+    @Test
+    @Timeout(value = 5000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void pipelined_publishes_are_answered_and_delivered_in_order() throws IOException {
+        final int messageCount = 5000;
+        subscriber.subscribe(exchangeName, "direct", queueName, "pipelined");
+
+        StringBuilder commands = new StringBuilder(exchange("direct", exchangeName));
+        for (int i = 0; i < messageCount; i++)
+            commands.append("\npublish pipelined MESSAGE-").append(i);
+
+        assertEquals("ok", publisher.sendCommandAndReadResponse(commands.toString()));
+        for (int i = 0; i < messageCount; i++)
+            assertEquals("ok", publisher.readResponse());
+        for (int i = 0; i < messageCount; i++)
+            assertEquals("MESSAGE-" + i, subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void pipelined_errors_keep_their_position_in_the_response_stream() throws IOException {
+        String commands = String.join("\n",
+                exchange("direct", exchangeName),
+                "publish",
+                "publish key first",
+                "unknown",
+                "publish key second");
+
+        assertEquals("ok", publisher.sendCommandAndReadResponse(commands));
+        assertThat(publisher.readResponse()).startsWith("error");
+        assertEquals("ok", publisher.readResponse());
+        assertThat(publisher.readResponse()).startsWith("error");
+        assertEquals("ok", publisher.readResponse());
+    }
+}
@@ -0,0 +1,92 @@
+package dslab.assignment2.broker;
+
+import dslab.util.Constants;
+import dslab.util.Global;
+import dslab.util.helper.TelnetClientHelper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static dslab.util.CommandBuilder.bind;
+import static dslab.util.CommandBuilder.exchange;
+import static dslab.util.CommandBuilder.publish;
+import static dslab.util.CommandBuilder.queue;
+import static dslab.util.CommandBuilder.subscribe;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class PriorityQueueTest extends BaseSingleBrokerTest {
+
+    private final String exchangeName = String.format("exchange-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+    private final String queueName = String.format("queue-%s", Global.SECURE_STRING_GENERATOR.getSecureString());
+
+    private TelnetClientHelper publisher;
+    private TelnetClientHelper subscriber;
+
+    @Override
+    protected void initTelnetClientHelpers() throws IOException {
+        publisher = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+        subscriber = new TelnetClientHelper(Constants.LOCALHOST, config.port());
+
+        publisher.connectAndReadResponse();
+        subscriber.connectAndReadResponse();
+    }
+
+    @Override
+    protected void closeTelnetClientHelpers() throws IOException {
+        publisher.disconnect();
+        subscriber.disconnect();
+    }
+
+    private void declareQueue(String arguments) throws IOException {
+        subscriber.sendCommandAndReadResponse(exchange("direct", exchangeName));
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(queue(queueName) + " " + arguments));
+        subscriber.sendCommandAndReadResponse(bind("priority"));
+        publisher.sendCommandAndReadResponse(exchange("direct", exchangeName));
+    }
+
+    private String publishWithPriority(String message, int priority) throws IOException {
+        return publisher.sendCommandAndReadResponse(publish("priority", message) + " priority=" + priority);
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void higher_priorities_are_delivered_first() throws IOException {
+        declareQueue("max-priority=5");
+        assertEquals("ok", publisher.publish("priority", "MESSAGE-0"));
+        assertEquals("ok", publishWithPriority("MESSAGE-1", 3));
+        assertEquals("ok", publishWithPriority("MESSAGE-2", 5));
+        assertEquals("ok", publishWithPriority("MESSAGE-3", 3));
+
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(subscribe()));
+        assertEquals("MESSAGE-2", subscriber.readResponse());
+        assertEquals("MESSAGE-1", subscriber.readResponse());
+        assertEquals("MESSAGE-3", subscriber.readResponse());
+        assertEquals("MESSAGE-0", subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void priorities_above_maximum_count_as_maximum() throws IOException {
+        declareQueue("max-priority=2");
+        assertEquals("ok", publishWithPriority("MESSAGE-0", 2));
+        assertEquals("ok", publishWithPriority("MESSAGE-1", 9));
+        assertEquals("ok", publishWithPriority("MESSAGE-2", 1));
+
+        assertEquals("ok", subscriber.sendCommandAndReadResponse(subscribe()));
+        assertEquals("MESSAGE-0", subscriber.readResponse());
+        assertEquals("MESSAGE-1", subscriber.readResponse());
+        assertEquals("MESSAGE-2", subscriber.readResponse());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void invalid_priorities_are_rejected() throws IOException {
+        declareQueue("max-priority=5");
+        assertThat(publishWithPriority("MESSAGE", 10)).startsWith("error");
+        assertThat(subscriber.sendCommandAndReadResponse(queue(queueName) + "-2 max-priority=10")).startsWith("error");
+        assertThat(subscriber.sendCommandAndReadResponse(queue(queueName) + "-3 durable max-priority=2")).startsWith("error");
+    }
+}
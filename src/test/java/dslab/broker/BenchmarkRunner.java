@@ -0,0 +1,78 @@
+package dslab.broker;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+/**
+ * Timing loop of the benchmarks next to the tests. These are plain main methods, not run by {@code mvn test}; after
+ * {@code mvn test-compile} run them with {@code java -cp target/classes:target/test-classes dslab.broker.<Name>}.
+ * <p>
+ * An operation is run in rounds after a few warm-up rounds, and the best round is reported: it is the one least
+ * disturbed by compilation, garbage collection and other processes. Rounds are timed in CPU time of the calling thread,
+ * so a busy machine does not count against the broker.
+ */
+final class BenchmarkRunner {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private BenchmarkRunner() {
+    }
+
+    /**
+     * Returns the best time per operation in nanoseconds. The operation gets the index of the call within its round;
+     * {@code afterRound} runs untimed after every round, e.g. to drain queues.
+     */
+    static double nanosPerOp(int warmups, int rounds, int ops, IntConsumer op, Runnable afterRound) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < warmups + rounds; round++) {
+            long start = THREADS.getCurrentThreadCpuTime();
+            for (int i = 0; i < ops; i++)
+                op.accept(i);
+            long elapsed = THREADS.getCurrentThreadCpuTime() - start;
+            afterRound.run();
+            if (round >= warmups)
+                best = Math.min(best, elapsed);
+        }
+        return (double) best / ops;
+    }
+
+    static int drain(NamedQueue[] queues) {
+        int count = 0;
+        for (NamedQueue queue : queues) {
+            while (queue.poll() != null)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Counts the messages put and keeps none, so only the cost of getting them to the queue is measured.
+     */
+    static final class CountingBuffer implements MessageBuffer {
+
+        final LongAdder count = new LongAdder();
+
+        @Override
+        public void put(Message message) {
+            this.count.increment();
+        }
+
+        @Override
+        public Message take() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Message poll() {
+            return null;
+        }
+
+        @Override
+        public Message poll(long timeout, TimeUnit unit) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package dslab.broker;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CommandLineTest {
+
+    private final CommandLine command = new CommandLine();
+
+    private CommandLine parse(String line) {
+        // pad the line, tokens must only ever look at their part of the array
+        byte[] bytes = ("##" + line + "##").getBytes(StandardCharsets.UTF_8);
+        this.command.parse(bytes, 2, bytes.length - 4);
+        return this.command;
+    }
+
+    @Test
+    void tokens_are_counted_like_string_split() {
+        String[] lines = {"publish key message", "queue  name", " exchange fanout x", "bind a b c d e f g h i"};
+        for (String line : lines)
+            assertArrayEquals(line.split(" "), this.parse(line).strings(), line);
+    }
+
+    @Test
+    void empty_arguments_between_spaces_are_kept() {
+        CommandLine command = this.parse("publish  message");
+
+        assertEquals(3, command.count());
+        assertEquals(0, command.length(1));
+        assertEquals("message", command.string(2));
+    }
+
+    @Test
+    void trailing_spaces_are_dropped() {
+        CommandLine command = this.parse("subscribe   ");
+
+        assertEquals(1, command.count());
+        assertTrue(command.is(0, "subscribe".getBytes(StandardCharsets.US_ASCII)));
+        assertFalse(command.isBlank());
+    }
+
+    @Test
+    void empty_and_blank_lines() {
+        assertEquals(0, this.parse("").count());
+        assertTrue(this.parse("").isBlank());
+        assertEquals(0, this.parse("   ").count());
+        assertTrue(this.parse("\t").isBlank());
+    }
+
+    @Test
+    void numbers_are_parsed_in_place() {
+        CommandLine command = this.parse("credit 42 +7 -1 x1 0 9223372036854775807 9223372036854775808 max-length=10");
+
+        assertEquals(42, command.number(1));
+        assertEquals(7, command.number(2));
+        assertEquals(-1, command.number(3));
+        assertEquals(-1, command.number(4));
+        assertEquals(0, command.number(5));
+        assertEquals(Long.MAX_VALUE, command.number(6));
+        assertEquals(-1, command.number(7));
+        assertEquals(10, command.number(8, "max-length=".length()));
+        assertEquals(-1, this.parse("credit +").number(1));
+    }
+
+    @Test
+    void tokens_keep_multi_byte_characters_intact() {
+        CommandLine command = this.parse("publish schlüssel 日本");
+
+        assertEquals("schlüssel", command.string(1));
+        assertArrayEquals("日本".getBytes(StandardCharsets.UTF_8), command.copy(2));
+    }
+}
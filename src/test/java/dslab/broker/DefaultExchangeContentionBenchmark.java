@@ -0,0 +1,100 @@
+package dslab.broker;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Publishers call {@link DefaultExchange#publish(String, Message)} directly, each cycling over the same queue names
+ * from its own offset, and the publishes per second of wall-clock time are reported. The queues count the messages
+ * and keep none. In the stalling runs another thread keeps publishing to one more queue whose enqueue blocks for
+ * 20 ms, like a full queue with {@code overflow=block-publish}; only the other publishers are counted.
+ * <p>
+ * Arguments: seconds per run (default 3).
+ */
+final class DefaultExchangeContentionBenchmark {
+
+    private static final int QUEUES = 1024;
+    private static final long STALL_MILLIS = 20;
+
+    public static void main(String[] args) throws InterruptedException {
+        long millis = TimeUnit.SECONDS.toMillis(args.length > 0 ? Long.parseLong(args[0]) : 3);
+
+        // warm-up
+        run(1, false, millis / 3);
+        run(8, true, millis / 3);
+
+        System.out.printf("1 publisher:                           %5.1f M publishes/s%n", run(1, false, millis));
+        System.out.printf("8 publishers:                          %5.1f M publishes/s%n", run(8, false, millis));
+        System.out.printf("8 publishers, one queue stalls 20 ms:  %5.1f M publishes/s%n", run(8, true, millis));
+    }
+
+    private static double run(int publishers, boolean stall, long millis) throws InterruptedException {
+        DefaultExchange exchange = new DefaultExchange("default");
+        String[] names = new String[QUEUES];
+        for (int i = 0; i < QUEUES; i++) {
+            names[i] = "queue-" + i;
+            exchange.bind(new NamedQueue(names[i], new BenchmarkRunner.CountingBuffer()), names[i]);
+        }
+        exchange.bind(new NamedQueue("stalling", new StallingBuffer()), "stalling");
+        Message message = new Message("payload".getBytes(StandardCharsets.UTF_8));
+
+        LongAdder published = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < publishers; p++) {
+            int offset = p * QUEUES / publishers;
+            threads.add(Thread.ofPlatform().start(() -> {
+                long count = 0;
+                for (int i = offset; !Thread.currentThread().isInterrupted(); i++, count++)
+                    exchange.publish(names[i & QUEUES - 1], message);
+                published.add(count);
+            }));
+        }
+        Thread staller = !stall ? null : Thread.ofPlatform().start(() -> {
+            while (!Thread.currentThread().isInterrupted())
+                exchange.publish("stalling", message);
+        });
+
+        long start = System.nanoTime();
+        Thread.sleep(millis);
+        for (Thread thread : threads)
+            thread.interrupt();
+        for (Thread thread : threads)
+            thread.join();
+        long elapsed = System.nanoTime() - start;
+        if (staller != null) {
+            staller.interrupt();
+            staller.join();
+        }
+        return published.sum() * 1e3 / elapsed;
+    }
+
+    private static final class StallingBuffer implements MessageBuffer {
+
+        @Override
+        public void put(Message message) {
+            try {
+                Thread.sleep(STALL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public Message take() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Message poll() {
+            return null;
+        }
+
+        @Override
+        public Message poll(long timeout, TimeUnit unit) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package dslab.broker;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DefaultExchangeTest {
+
+    private static Message message(int sequence) {
+        return new Message(ByteBuffer.allocate(4).putInt(sequence).array());
+    }
+
+    private static int sequence(Message message) {
+        return ByteBuffer.wrap(message.payload()).getInt();
+    }
+
+    @Test
+    void unbinding_a_deleted_queue_keeps_its_successor() {
+        DefaultExchange exchange = new DefaultExchange("default");
+        NamedQueue deleted = new NamedQueue("orders");
+        NamedQueue redeclared = new NamedQueue("orders");
+        exchange.bind(deleted, "orders");
+        exchange.unbind(deleted);
+        exchange.bind(redeclared, "orders");
+
+        // a late unbind of the old instance must not take the new one with it
+        exchange.unbind(deleted);
+        assertFalse(exchange.unbind(deleted, "orders"));
+        exchange.publish("orders", message(0));
+
+        assertNull(deleted.poll());
+        assertEquals(0, sequence(redeclared.poll()));
+        assertTrue(exchange.unbind(redeclared, "orders"));
+    }
+
+    @Test
+    @Timeout(value = 10000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void publishing_during_delete_and_redeclare_delivers_each_message_at_most_once() throws Exception {
+        DefaultExchange exchange = new DefaultExchange("default");
+        NamedQueue initial = new NamedQueue("orders");
+        exchange.bind(initial, "orders");
+
+        AtomicBoolean publishing = new AtomicBoolean(true);
+        List<NamedQueue> instances = new ArrayList<>(List.of(initial));
+        Thread redeclarer = new Thread(() -> {
+            NamedQueue current = initial;
+            while (publishing.get()) {
+                exchange.unbind(current);
+                current = new NamedQueue("orders");
+                instances.add(current);
+                exchange.bind(current, "orders");
+            }
+        });
+        redeclarer.start();
+
+        int published = 200_000;
+        for (int i = 0; i < published; i++)
+            exchange.publish("orders", message(i));
+        publishing.set(false);
+        redeclarer.join();
+
+        // every instance got an ordered run of messages, later instances only later ones
+        int last = -1;
+        for (NamedQueue instance : instances) {
+            for (Message message = instance.poll(); message != null; message = instance.poll()) {
+                int sequence = sequence(message);
+                assertTrue(sequence > last && sequence < published, "got " + sequence + " after " + last);
+                last = sequence;
+            }
+        }
+
+        NamedQueue bound = instances.get(instances.size() - 1);
+        exchange.publish("orders", message(published));
+        assertEquals(published, sequence(bound.poll()));
+        assertNull(bound.poll());
+    }
+}
@@ -0,0 +1,129 @@
+package dslab.broker;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class DispatcherTest {
+
+    private final List<Thread> dispatcherThreads = new CopyOnWriteArrayList<>();
+    private final ThreadFactory threadFactory = runnable -> {
+        Thread thread = new Thread(runnable);
+        if (runnable instanceof Dispatcher)
+            dispatcherThreads.add(thread);
+        return thread;
+    };
+    private final SubscriptionSettings settings = new SubscriptionSettings(threadFactory, 1, 0);
+    private final NamedQueue queue = new NamedQueue("queue");
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+
+    private Subscription subscribe() {
+        Subscription subscription = new Subscription(queue, messages -> messages.forEach(
+                message -> received.add(new String(message.payload(), StandardCharsets.UTF_8))), settings);
+        subscription.start();
+        return subscription;
+    }
+
+    private static void awaitStopped(Thread thread) throws InterruptedException {
+        thread.join();
+        assertFalse(thread.isAlive());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void thread_stops_with_last_subscription_and_restarts_with_next() throws InterruptedException {
+        Subscription first = subscribe();
+        Subscription second = subscribe();
+        queue.enqueue(new Message("m1".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("m1", received.take());
+        assertEquals(1, dispatcherThreads.size());
+
+        first.interrupt();
+        assertNull(received.poll(50, TimeUnit.MILLISECONDS));
+        queue.enqueue(new Message("m2".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("m2", received.take());
+
+        second.interrupt();
+        awaitStopped(dispatcherThreads.get(0));
+
+        // published while nobody listens, kept for the next subscription
+        queue.enqueue(new Message("m3".getBytes(StandardCharsets.UTF_8)));
+        Subscription third = subscribe();
+        assertEquals("m3", received.take());
+        assertEquals(2, dispatcherThreads.size());
+
+        third.interrupt();
+        awaitStopped(dispatcherThreads.get(1));
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void message_held_by_stopped_thread_goes_out_first() throws InterruptedException {
+        Subscription limited = new Subscription(queue, messages -> messages.forEach(
+                message -> received.add(new String(message.payload(), StandardCharsets.UTF_8))), settings, 1);
+        limited.start();
+        for (int i = 0; i < 3; i++)
+            queue.enqueue(new Message(("m" + i).getBytes(StandardCharsets.UTF_8)));
+        assertEquals("m0", received.take());
+
+        // the dispatcher took m1 but has no subscription with room for it
+        limited.interrupt();
+        awaitStopped(dispatcherThreads.get(0));
+        Subscription next = subscribe();
+        assertEquals("m1", received.take());
+        assertEquals("m2", received.take());
+        next.interrupt();
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void thread_stops_when_queue_is_deleted() throws InterruptedException {
+        Subscription subscription = subscribe();
+        queue.enqueue(new Message("m1".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("m1", received.take());
+
+        queue.delete();
+        awaitStopped(dispatcherThreads.get(0));
+        subscription.interrupt();
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void shutdown_waits_for_thread_stopped_by_last_unsubscribe() throws InterruptedException {
+        // returning a message takes a while, as for a durable queue writing it to its log
+        LinkedMessageBuffer buffer = new LinkedMessageBuffer() {
+            @Override
+            public void requeue(List<Message> messages) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.requeue(messages);
+            }
+        };
+        NamedQueue slow = new NamedQueue("slow", buffer);
+        Subscription limited = new Subscription(slow, messages -> messages.forEach(
+                message -> received.add(new String(message.payload(), StandardCharsets.UTF_8))), settings, 1);
+        limited.start();
+        slow.enqueue(new Message("m0".getBytes(StandardCharsets.UTF_8)));
+        slow.enqueue(new Message("m1".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("m0", received.take());
+
+        // the dispatcher holds m1, the queue shuts down before its stopping thread handed it back
+        limited.interrupt();
+        slow.shutdown();
+        assertEquals("m1", new String(buffer.poll().payload(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,97 @@
+package dslab.broker;
+
+import dslab.config.Durability;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class DurableMessageBufferTest {
+
+    private final GroupCommitter committer = new GroupCommitter(Durability.FSYNC, 0, 1024 * 1024, Thread::new);
+    private Path directory;
+
+    @BeforeEach
+    void start() throws IOException {
+        directory = Files.createTempDirectory("durable-buffer");
+        committer.start();
+    }
+
+    @AfterEach
+    void shutdown() throws IOException {
+        committer.shutdown();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(path);
+        }
+    }
+
+    private static List<byte[]> payloads() {
+        List<byte[]> payloads = new ArrayList<>();
+        payloads.add("grüße-ñ-€-日本語-😀".getBytes(StandardCharsets.UTF_8));
+        payloads.add(new byte[]{(byte) 0xE9, 't', (byte) 0xE9});
+        payloads.add(new byte[]{(byte) 0xF0, (byte) 0x9F, (byte) 0x98});
+        byte[] all = new byte[256];
+        for (int b = 0; b < all.length; b++)
+            all[b] = (byte) b;
+        payloads.add(all);
+        return payloads;
+    }
+
+    private void putDurably(DurableMessageBuffer buffer, List<byte[]> payloads) throws InterruptedException {
+        for (byte[] payload : payloads)
+            buffer.put(new Message(payload.clone()));
+        CountDownLatch durable = new CountDownLatch(1);
+        committer.whenDurable(committer.threadTicket(), durable::countDown);
+        durable.await();
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void non_ascii_payloads_are_recovered_byte_for_byte() throws Exception {
+        List<byte[]> payloads = payloads();
+        DurableMessageBuffer buffer = new DurableMessageBuffer(directory, CommitLog.DEFAULT_SEGMENT_SIZE, committer);
+        putDurably(buffer, payloads);
+        // consumed before the restart, so not recovered
+        assertArrayEquals(payloads.get(0), buffer.take().payload());
+        buffer.close();
+
+        DurableMessageBuffer recovered = new DurableMessageBuffer(directory, CommitLog.DEFAULT_SEGMENT_SIZE, committer);
+        for (byte[] payload : payloads.subList(1, payloads.size()))
+            assertArrayEquals(payload, recovered.poll().payload());
+        assertNull(recovered.poll());
+        recovered.close();
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void payloads_spanning_several_segments_are_recovered_byte_for_byte() throws Exception {
+        List<byte[]> payloads = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            payloads.addAll(payloads());
+        // small segments, so records keep rolling over into new files
+        DurableMessageBuffer buffer = new DurableMessageBuffer(directory, 1024, committer);
+        putDurably(buffer, payloads);
+        buffer.close();
+
+        DurableMessageBuffer recovered = new DurableMessageBuffer(directory, 1024, committer);
+        for (byte[] payload : payloads)
+            assertArrayEquals(payload, recovered.poll().payload());
+        assertNull(recovered.poll());
+        recovered.close();
+    }
+}
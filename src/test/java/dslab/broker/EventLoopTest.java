@@ -0,0 +1,231 @@
+package dslab.broker;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class EventLoopTest {
+
+    private static final String PADDING = "x".repeat(1000);
+
+    private final List<Socket> clients = new ArrayList<>();
+    private final CountDownLatch written = new CountDownLatch(1);
+    private ServerSocketChannel server;
+    private EventLoop loop;
+    private Thread loopThread;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        BrokerContext context = new BrokerContext(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), null, null,
+                null, null, TopologyStore.disabled(), null, null);
+        loop = new EventLoop(channel -> new ScriptedHandler(channel, context, written));
+        loopThread = new Thread(loop);
+        loopThread.start();
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        for (Socket client : clients)
+            client.close();
+        loop.shutdown();
+        loopThread.join(1000);
+        server.close();
+    }
+
+    private Socket connect(int receiveBufferSize) throws IOException {
+        Socket client = new Socket();
+        if (receiveBufferSize > 0)
+            client.setReceiveBufferSize(receiveBufferSize);
+        client.connect(server.getLocalAddress());
+        loop.register(server.accept());
+        clients.add(client);
+        assertEquals("ok SMQP", reader(client).readLine());
+        return client;
+    }
+
+    private Socket connect() throws IOException {
+        return connect(0);
+    }
+
+    private static BufferedReader reader(Socket client) throws IOException {
+        return new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8), 1);
+    }
+
+    private static void send(Socket client, String text) throws IOException {
+        OutputStream out = client.getOutputStream();
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void line_split_across_reads_is_joined() throws Exception {
+        Socket client = connect();
+        BufferedReader in = reader(client);
+
+        send(client, "hel");
+        Thread.sleep(50);
+        send(client, "lo wor");
+        Thread.sleep(50);
+        send(client, "ld\r\nsecond\nthi");
+        Thread.sleep(50);
+        send(client, "rd\n");
+
+        assertEquals("echo hello world", in.readLine());
+        assertEquals("echo second", in.readLine());
+        assertEquals("echo third", in.readLine());
+    }
+
+    @Test
+    @Timeout(value = 5000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void output_to_slow_reader_is_written_in_parts_without_blocking_others() throws Exception {
+        Socket slow = connect(4096);
+        Socket other = connect();
+        int lines = 5000;
+
+        send(slow, "flood " + lines + "\n");
+        // the socket buffers fill up long before 5 MB are written
+        Thread.sleep(200);
+        send(other, "ping\n");
+        assertEquals("echo ping", reader(other).readLine());
+
+        BufferedReader in = reader(slow);
+        for (int i = 0; i < lines; i++)
+            assertEquals("line-" + i + " " + PADDING, in.readLine());
+    }
+
+    @Test
+    @Timeout(value = 5000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void written_callback_waits_until_the_socket_took_the_output() throws Exception {
+        Socket slow = connect(4096);
+        int lines = 5000;
+
+        send(slow, "flood " + lines + "\n");
+        // queued, but the client does not read
+        assertFalse(written.await(200, TimeUnit.MILLISECONDS));
+
+        BufferedReader in = reader(slow);
+        for (int i = 0; i < lines; i++)
+            assertEquals("line-" + i + " " + PADDING, in.readLine());
+        written.await();
+    }
+
+    @Test
+    @Timeout(value = 5000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void over_long_line_closes_only_that_connection() throws Exception {
+        Socket flooding = connect();
+        Socket other = connect();
+
+        byte[] chunk = PADDING.getBytes(StandardCharsets.UTF_8);
+        try {
+            for (int written = 0; written <= 1024 * 1024; written += chunk.length)
+                flooding.getOutputStream().write(chunk);
+            flooding.getOutputStream().flush();
+        } catch (IOException e) {
+            // the broker may close the connection while the rest is still being sent
+        }
+        assertClosed(flooding);
+
+        send(other, "ping\n");
+        assertEquals("echo ping", reader(other).readLine());
+    }
+
+    @Test
+    @Timeout(value = 5000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void over_long_line_ending_in_a_later_read_is_not_handled() throws Exception {
+        Socket client = connect();
+
+        // just below the limit, buffered as a partial line
+        send(client, "x".repeat(LineReader.MAX_LINE_LENGTH - 10));
+        Thread.sleep(200);
+        // the end of the line pushes it over the limit
+        try {
+            send(client, "y".repeat(100) + "\n");
+        } catch (IOException e) {
+            // closed by the broker already
+        }
+        assertClosed(client);
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void failing_handler_closes_only_its_connection() throws Exception {
+        Socket failing = connect();
+        Socket other = connect();
+
+        send(failing, "fail\n");
+        assertClosed(failing);
+
+        send(other, "ping\n");
+        assertEquals("echo ping", reader(other).readLine());
+        Socket next = connect();
+        send(next, "pong\n");
+        assertEquals("echo pong", reader(next).readLine());
+    }
+
+    private static void assertClosed(Socket client) throws IOException {
+        try {
+            assertNull(reader(client).readLine());
+        } catch (IOException e) {
+            // reset by the broker, closed as well
+        }
+    }
+
+    /**
+     * Echoes every line; {@code flood <n>} answers with n long lines, counting down the latch once they are written,
+     * and {@code fail} throws.
+     */
+    private static final class ScriptedHandler extends BrokerClientHandler {
+
+        private final ClientChannel channel;
+        private final CountDownLatch written;
+
+        ScriptedHandler(ClientChannel channel, BrokerContext context, CountDownLatch written) {
+            super(channel, context);
+            this.channel = channel;
+            this.written = written;
+        }
+
+        @Override
+        void handleLine(byte[] bytes, int offset, int length) {
+            String line = new String(bytes, offset, length, StandardCharsets.UTF_8);
+            if (line.equals("fail"))
+                throw new IllegalStateException("handler failed");
+
+            try {
+                if (line.startsWith("flood ")) {
+                    int lines = Integer.parseInt(line.substring("flood ".length()));
+                    for (int i = 0; i < lines; i++)
+                        channel.write("line-" + i + " " + PADDING);
+                    channel.whenWritten(written::countDown);
+                } else {
+                    channel.write("echo " + line);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
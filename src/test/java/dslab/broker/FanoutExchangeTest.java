@@ -0,0 +1,90 @@
+package dslab.broker;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FanoutExchangeTest {
+
+    private static Message message(int sequence) {
+        return new Message(ByteBuffer.allocate(4).putInt(sequence).array());
+    }
+
+    private static int sequence(Message message) {
+        return ByteBuffer.wrap(message.payload()).getInt();
+    }
+
+    @Test
+    void unbinding_moves_last_queue_into_the_free_slot() {
+        FanoutExchange exchange = new FanoutExchange("fanout");
+        NamedQueue first = new NamedQueue("first");
+        NamedQueue second = new NamedQueue("second");
+        NamedQueue third = new NamedQueue("third");
+        exchange.bind(first, "ignored");
+        exchange.bind(second, "ignored");
+        exchange.bind(third, "ignored");
+
+        // third now sits where first was, unbinding it again must find it there
+        assertTrue(exchange.unbind(first, "other"));
+        exchange.unbind(third);
+        exchange.bind(first, "ignored");
+        exchange.publish("any", message(0));
+
+        assertEquals(0, sequence(first.poll()));
+        assertEquals(0, sequence(second.poll()));
+        assertNull(third.poll());
+    }
+
+    @Test
+    @Timeout(value = 10000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void binds_and_unbinds_during_publish_do_not_lose_or_duplicate_messages() throws Exception {
+        FanoutExchange exchange = new FanoutExchange("fanout");
+        NamedQueue left = new NamedQueue("left");
+        NamedQueue right = new NamedQueue("right");
+        // bound last, so every unbind moves it to another slot while the publisher is running
+        NamedQueue stable = new NamedQueue("stable");
+        exchange.bind(left, "");
+        exchange.bind(right, "");
+        exchange.bind(stable, "");
+
+        AtomicBoolean publishing = new AtomicBoolean(true);
+        Thread binder = new Thread(() -> {
+            while (publishing.get()) {
+                exchange.unbind(left);
+                exchange.bind(left, "");
+                exchange.unbind(right, "");
+                exchange.bind(right, "");
+            }
+        });
+        binder.start();
+
+        int published = 200_000;
+        for (int i = 0; i < published; i++)
+            exchange.publish("", message(i));
+        publishing.set(false);
+        binder.join();
+
+        for (int i = 0; i < published; i++)
+            assertEquals(i, sequence(stable.poll()));
+        assertNull(stable.poll());
+        assertIncreasing(left, published);
+        assertIncreasing(right, published);
+    }
+
+    // queues that were bound only part of the time get a subset, but still each message at most once and in order
+    private static void assertIncreasing(NamedQueue queue, int published) {
+        int last = -1;
+        for (Message message = queue.poll(); message != null; message = queue.poll()) {
+            int sequence = sequence(message);
+            assertTrue(sequence > last && sequence < published, "got " + sequence + " after " + last);
+            last = sequence;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package dslab.broker;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Publishes to a fanout exchange with a growing number of bound queues and reports the time per publish and per bound
+ * queue. The queues count the messages and keep none, so only the cost of the exchange delivering to them is measured.
+ */
+final class FanoutWidthBenchmark {
+
+    private static final int[] WIDTHS = {1, 10, 100, 1_000, 10_000};
+    private static final int DELIVERIES = 2_000_000;
+
+    public static void main(String[] args) {
+        Message message = new Message("payload".getBytes(StandardCharsets.UTF_8));
+
+        for (int width : WIDTHS) {
+            FanoutExchange exchange = new FanoutExchange("fanout");
+            BenchmarkRunner.CountingBuffer[] counters = new BenchmarkRunner.CountingBuffer[width];
+            for (int i = 0; i < width; i++) {
+                counters[i] = new BenchmarkRunner.CountingBuffer();
+                exchange.bind(new NamedQueue("queue-" + i, counters[i]), "");
+            }
+
+            int publishes = DELIVERIES / width;
+            double nanos = BenchmarkRunner.nanosPerOp(5, 15, publishes, i -> exchange.publish("", message), () -> {
+                for (BenchmarkRunner.CountingBuffer counter : counters) {
+                    if (counter.count.sumThenReset() != publishes)
+                        throw new IllegalStateException("error, not every bound queue got every message");
+                }
+            });
+            System.out.printf("%5d queues: %8.0f ns/publish, %5.1f ns/queue%n", width, nanos, nanos / width);
+        }
+    }
+}
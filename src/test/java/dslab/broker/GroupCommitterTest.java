@@ -0,0 +1,109 @@
+package dslab.broker;
+
+import dslab.config.Durability;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GroupCommitterTest {
+
+    private final GroupCommitter committer = new GroupCommitter(Durability.FSYNC, 0, 1024 * 1024, Thread::new);
+    private Path directory;
+
+    @BeforeEach
+    void start() throws IOException {
+        directory = Files.createTempDirectory("group-committer");
+        committer.start();
+    }
+
+    @AfterEach
+    void shutdown() throws IOException {
+        committer.shutdown();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(path);
+        }
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void response_is_held_until_forced_and_released_afterwards() throws Exception {
+        CountDownLatch forcing = new CountDownLatch(1);
+        CountDownLatch forced = new CountDownLatch(1);
+        DurableMessageBuffer buffer = new DurableMessageBuffer(directory, CommitLog.DEFAULT_SEGMENT_SIZE, committer) {
+            @Override
+            void force() {
+                forcing.countDown();
+                try {
+                    forced.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.force();
+            }
+        };
+
+        buffer.put(new Message(new byte[]{1}));
+        long ticket = committer.threadTicket();
+        CountDownLatch released = new CountDownLatch(1);
+        committer.whenDurable(ticket, released::countDown);
+
+        // written, but the device has not synced yet
+        forcing.await();
+        assertFalse(released.await(100, TimeUnit.MILLISECONDS));
+        assertFalse(committer.isDurable(ticket));
+
+        forced.countDown();
+        released.await();
+        assertTrue(committer.isDurable(ticket));
+    }
+
+    @Test
+    @Timeout(value = 5000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void callbacks_of_concurrent_publishers_all_run_once_durable() throws Exception {
+        DurableMessageBuffer buffer = new DurableMessageBuffer(directory, CommitLog.DEFAULT_SEGMENT_SIZE, committer);
+        int publishers = 4;
+        int publishes = 2000;
+        AtomicInteger early = new AtomicInteger();
+        CountDownLatch released = new CountDownLatch(publishers * publishes);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < publishers; p++) {
+            // publishers race between submit and registering, so callbacks queue up slightly out of ticket order
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < publishes; i++) {
+                    buffer.put(new Message(new byte[]{(byte) i}));
+                    long ticket = committer.threadTicket();
+                    committer.whenDurable(ticket, () -> {
+                        if (!committer.isDurable(ticket))
+                            early.incrementAndGet();
+                        released.countDown();
+                    });
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        released.await();
+        assertEquals(0, early.get());
+    }
+}
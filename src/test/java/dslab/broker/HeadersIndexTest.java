@@ -0,0 +1,72 @@
+package dslab.broker;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class HeadersIndexTest {
+
+    private static int drain(NamedQueue queue) {
+        int count = 0;
+        while (queue.poll() != null)
+            count++;
+        return count;
+    }
+
+    @Test
+    void scratch_grows_with_the_index_it_is_used_for() {
+        HeadersExchange small = new HeadersExchange("small");
+        NamedQueue only = new NamedQueue("only");
+        small.bind(only, "format=pdf");
+        small.publish("format=pdf", new Message(new byte[0]));
+        assertEquals(1, drain(only));
+
+        // the same pooled scratch is reused for an index with many more bindings and queues
+        HeadersExchange large = new HeadersExchange("large");
+        NamedQueue[] queues = new NamedQueue[500];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new NamedQueue("queue-" + i);
+            large.bind(queues[i], "x-match=any,format=pdf,id=" + i);
+        }
+        large.publish("format=pdf", new Message(new byte[0]));
+        large.publish("id=499", new Message(new byte[0]));
+        for (int i = 0; i < queues.length - 1; i++)
+            assertEquals(1, drain(queues[i]));
+        assertEquals(2, drain(queues[queues.length - 1]));
+    }
+
+    @Test
+    @Timeout(value = 10000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void concurrent_publishers_route_independently() {
+        HeadersExchange exchange = new HeadersExchange("headers");
+        NamedQueue pdfs = new NamedQueue("pdfs");
+        NamedQueue reports = new NamedQueue("reports");
+        NamedQueue pdfReports = new NamedQueue("pdf-reports");
+        exchange.bind(pdfs, "format=pdf");
+        exchange.bind(reports, "x-match=any,type=report,kind=report");
+        exchange.bind(pdfReports, "format=pdf,type=report");
+
+        int publishers = 64;
+        int rounds = 500;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int p = 0; p < publishers; p++) {
+                executor.submit(() -> {
+                    for (int r = 0; r < rounds; r++) {
+                        exchange.publish("format=pdf,type=report", new Message(new byte[0]));
+                        exchange.publish("format=pdf", new Message(new byte[0]));
+                        exchange.publish("kind=report,type=report", new Message(new byte[0]));
+                    }
+                });
+            }
+        }
+
+        assertEquals(2 * publishers * rounds, drain(pdfs));
+        assertEquals(2 * publishers * rounds, drain(reports));
+        assertEquals(publishers * rounds, drain(pdfReports));
+    }
+}
@@ -0,0 +1,66 @@
+package dslab.broker;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LineReaderTest {
+
+    private static LineReader reader(byte[]... chunks) {
+        // one stream per chunk, so lines arrive split across reads
+        List<InputStream> streams = Arrays.stream(chunks).map(chunk -> (InputStream) new ByteArrayInputStream(chunk))
+                .toList();
+        return new LineReader(new SequenceInputStream(Collections.enumeration(streams)));
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String next(LineReader reader) throws IOException {
+        int length = reader.readLine();
+        return length < 0 ? null : new String(reader.array(), reader.lineStart(), length, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void lines_are_split_across_reads_and_terminators_dropped() throws IOException {
+        LineReader reader = reader(bytes("hel"), bytes("lo\r\nwor"), bytes("ld\n\nlast"));
+
+        assertEquals("hello", next(reader));
+        assertEquals("world", next(reader));
+        assertEquals("", next(reader));
+        assertEquals("last", next(reader));
+        assertNull(next(reader));
+    }
+
+    @Test
+    void line_of_maximum_length_is_read() throws IOException {
+        byte[] line = new byte[LineReader.MAX_LINE_LENGTH];
+        Arrays.fill(line, (byte) 'x');
+        LineReader reader = reader(line, bytes("\nnext\n"));
+
+        assertEquals(LineReader.MAX_LINE_LENGTH, reader.readLine());
+        assertEquals("next", next(reader));
+    }
+
+    @Test
+    void over_long_line_is_rejected() {
+        byte[] line = new byte[LineReader.MAX_LINE_LENGTH + 1];
+        Arrays.fill(line, (byte) 'x');
+        LineReader reader = reader(line, bytes("\n"));
+
+        assertThrows(IOException.class, reader::readLine);
+        assertEquals(LineReader.MAX_LINE_LENGTH + 1, reader.array().length);
+    }
+}
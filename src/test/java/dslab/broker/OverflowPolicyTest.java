@@ -0,0 +1,27 @@
+package dslab.broker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class OverflowPolicyTest {
+
+    @Test
+    void policies_round_trip_under_turkish_locale() {
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(Locale.forLanguageTag("tr-TR"));
+        try {
+            for (OverflowPolicy policy : OverflowPolicy.values()) {
+                assertEquals(policy, OverflowPolicy.parse(policy.toString()));
+
+                QueueOptions options = QueueOptions.parse(new String[]{"max-length=1", "overflow=" + policy}, 0);
+                assertEquals(options, QueueOptions.parse(options.toArguments().toArray(new String[0]), 0));
+            }
+            assertEquals("reject-publish", OverflowPolicy.REJECT_PUBLISH.toString());
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+}
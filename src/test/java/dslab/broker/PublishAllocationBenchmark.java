@@ -0,0 +1,84 @@
+package dslab.broker;
+
+import dslab.config.BrokerConfig;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds publish commands straight into {@link BrokerClientHandler#handleLine(byte[], int, int)}, with a channel that
+ * discards the responses, and reports the bytes allocated and the time per publish. What remains allocated is what
+ * stays queued: the payload, the message, the queue node and, with a time to live, the timer entry.
+ */
+final class PublishAllocationBenchmark {
+
+    private static final int PUBLISHES = 100_000;
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        BrokerConfig config = new BrokerConfig("benchmark", "localhost", 0, "benchmark", "localhost", 0);
+        GroupCommitter committer = new GroupCommitter(config.durability(), 0, config.commitBatchBytes(), Thread::new);
+        TimerWheel timers = new TimerWheel(TimerWheel.DEFAULT_TICK_NANOS, TimerWheel.DEFAULT_WHEEL_SIZE, Thread::new);
+        timers.start();
+        Map<String, Exchange> exchanges = new ConcurrentHashMap<>();
+        Map<String, NamedQueue> queues = new ConcurrentHashMap<>();
+        DefaultExchange defaultExchange = new DefaultExchange("default");
+        exchanges.put("default", defaultExchange);
+        BrokerContext context = new BrokerContext(exchanges, queues, defaultExchange, null,
+                new QueueFactory(config, committer, timers), committer, TopologyStore.disabled(), timers,
+                new QueueReaper(queues, exchanges, TopologyStore.disabled(), timers));
+
+        try {
+            run(context, "direct publish", "direct", "key", "publish key MESSAGE-0123456789");
+            run(context, "topic publish", "topic", "key.#", "publish key.a MESSAGE-0123456789");
+            run(context, "publish with ttl + prio", "direct", "key", "publish key MESSAGE-0123456789 60000 priority=5");
+        } finally {
+            timers.shutdown();
+        }
+    }
+
+    private static void run(BrokerContext context, String label, String type, String bindingKey, String publish) {
+        BrokerClientHandler handler = new BrokerClientHandler(new DiscardingChannel(), context);
+        NamedQueue[] queue = new NamedQueue[1];
+        for (String line : new String[]{"exchange " + type + " benchmark-" + type, "queue benchmark-" + label.length(),
+                "bind " + bindingKey})
+            handle(handler, line.getBytes(StandardCharsets.UTF_8));
+        queue[0] = context.queues().get("benchmark-" + label.length());
+
+        byte[] line = publish.getBytes(StandardCharsets.UTF_8);
+        long[] allocated = new long[1];
+        double nanos = BenchmarkRunner.nanosPerOp(5, 10, PUBLISHES, i -> handle(handler, line), () -> {
+            BenchmarkRunner.drain(queue);
+            long before = THREADS.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < PUBLISHES; i++)
+                handle(handler, line);
+            allocated[0] = THREADS.getCurrentThreadAllocatedBytes() - before;
+            if (BenchmarkRunner.drain(queue) != PUBLISHES)
+                throw new IllegalStateException("error, publishes were not routed to " + queue[0].getName());
+        });
+        System.out.printf("%-24s %4d bytes/publish, %.0f ns/publish%n", label, allocated[0] / PUBLISHES, nanos);
+    }
+
+    private static void handle(BrokerClientHandler handler, byte[] line) {
+        handler.handleLine(line, 0, line.length);
+    }
+
+    private static final class DiscardingChannel implements ClientChannel {
+
+        @Override
+        public void write(byte[] line) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
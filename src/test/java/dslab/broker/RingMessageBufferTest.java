@@ -0,0 +1,194 @@
+package dslab.broker;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RingMessageBufferTest {
+
+    private static RingMessageBuffer ring(int capacity, long fullTimeoutMillis) {
+        return new RingMessageBuffer(capacity, WaitStrategy.of("blocking"), fullTimeoutMillis);
+    }
+
+    private static Message message(int producer, int sequence) {
+        return new Message(ByteBuffer.allocate(8).putInt(producer).putInt(sequence).array());
+    }
+
+    private static int producer(Message message) {
+        return ByteBuffer.wrap(message.payload()).getInt(0);
+    }
+
+    private static int sequence(Message message) {
+        return ByteBuffer.wrap(message.payload()).getInt(4);
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void full_ring_rejects_after_timeout() {
+        RingMessageBuffer buffer = ring(4, 50);
+        for (int i = 0; i < 4; i++)
+            buffer.put(message(0, i));
+
+        long rejections = BoundedMessageBuffer.threadRejections();
+        long start = System.nanoTime();
+        buffer.put(message(0, 4));
+        assertEquals(rejections + 1, BoundedMessageBuffer.threadRejections());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        for (int i = 0; i < 4; i++)
+            assertEquals(i, sequence(buffer.poll()));
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void interrupted_producer_is_rejected_without_waiting() {
+        RingMessageBuffer buffer = ring(2, TimeUnit.HOURS.toMillis(1));
+        buffer.putAll(List.of(message(0, 0), message(0, 1)));
+
+        long rejections = BoundedMessageBuffer.threadRejections();
+        Thread.currentThread().interrupt();
+        try {
+            buffer.put(message(0, 2));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+        assertEquals(rejections + 1, BoundedMessageBuffer.threadRejections());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void producer_waits_for_consumer_to_make_room() throws Exception {
+        RingMessageBuffer buffer = ring(2, TimeUnit.HOURS.toMillis(1));
+        buffer.putAll(List.of(message(0, 0), message(0, 1)));
+
+        CompletableFuture<Long> producer = CompletableFuture.supplyAsync(() -> {
+            long rejections = BoundedMessageBuffer.threadRejections();
+            buffer.put(message(0, 2));
+            return BoundedMessageBuffer.threadRejections() - rejections;
+        });
+        Thread.sleep(50);
+        assertFalse(producer.isDone());
+
+        assertEquals(0, sequence(buffer.poll()));
+        assertEquals(0, producer.get().longValue());
+        assertEquals(1, sequence(buffer.poll()));
+        assertEquals(2, sequence(buffer.poll()));
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void messages_stay_in_order_across_many_laps() {
+        RingMessageBuffer buffer = ring(4, 0);
+        int next = 0;
+        for (int lap = 0; lap < 1000; lap++) {
+            // three at a time, so batches straddle the end of the ring
+            buffer.putAll(List.of(message(0, next), message(0, next + 1), message(0, next + 2)));
+            for (int i = 0; i < 3; i++)
+                assertEquals(next++, sequence(buffer.poll()));
+            assertNull(buffer.poll());
+        }
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void requeue_into_full_ring_does_not_wait() {
+        RingMessageBuffer buffer = ring(2, TimeUnit.HOURS.toMillis(1));
+        buffer.putAll(List.of(message(0, 0), message(0, 1)));
+        Message taken = buffer.poll();
+        buffer.put(message(0, 2));
+
+        // the ring is full again, the consumer hands back what it could not deliver
+        buffer.requeue(List.of(taken));
+        assertSame(taken, buffer.poll());
+        assertEquals(1, sequence(buffer.poll()));
+        assertEquals(2, sequence(buffer.poll()));
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void oversized_batch_is_split_into_ring_sized_claims() {
+        RingMessageBuffer buffer = ring(4, 50);
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 6; i++)
+            batch.add(message(0, i));
+
+        long rejections = BoundedMessageBuffer.threadRejections();
+        buffer.putAll(batch);
+        // nobody consumes, so the second claim times out and the end of the batch is rejected
+        assertEquals(rejections + 2, BoundedMessageBuffer.threadRejections());
+        for (int i = 0; i < 4; i++)
+            assertEquals(i, sequence(buffer.poll()));
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    @Timeout(value = 10000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void concurrent_batches_are_claimed_contiguously() throws Exception {
+        int producers = 4;
+        int batches = 500;
+        int batchSize = 8;
+        RingMessageBuffer buffer = ring(32, TimeUnit.HOURS.toMillis(1));
+
+        List<CompletableFuture<Long>> running = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            running.add(CompletableFuture.supplyAsync(() -> {
+                long rejections = BoundedMessageBuffer.threadRejections();
+                for (int b = 0; b < batches; b++) {
+                    List<Message> batch = new ArrayList<>(batchSize);
+                    for (int i = 0; i < batchSize; i++)
+                        batch.add(message(producer, b * batchSize + i));
+                    buffer.putAll(batch);
+                }
+                return BoundedMessageBuffer.threadRejections() - rejections;
+            }, runnable -> new Thread(runnable).start()));
+        }
+
+        int[] next = new int[producers];
+        for (int received = 0; received < producers * batches * batchSize; received += batchSize) {
+            Message first = buffer.take();
+            int producer = producer(first);
+            assertEquals(next[producer], sequence(first));
+            // nothing of another producer gets in between the messages of a batch
+            for (int i = 1; i < batchSize; i++) {
+                Message message = buffer.take();
+                assertEquals(producer, producer(message));
+                assertEquals(next[producer] + i, sequence(message));
+            }
+            next[producer] += batchSize;
+        }
+        for (CompletableFuture<Long> producer : running)
+            assertEquals(0, producer.get().longValue());
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void bounded_queue_does_not_count_messages_rejected_by_full_ring() {
+        QueueOptions options = QueueOptions.parse(new String[]{"max-length=2"}, 0);
+        BoundedMessageBuffer buffer = new BoundedMessageBuffer(ring(2, 0), options);
+        buffer.putAll(List.of(message(0, 0), message(0, 1)));
+
+        long rejections = BoundedMessageBuffer.threadRejections();
+        buffer.put(message(0, 2));
+        assertEquals(rejections + 1, BoundedMessageBuffer.threadRejections());
+        // counting the rejected message would exceed the limit and drop the oldest stored one
+        assertEquals(0, sequence(buffer.poll()));
+        assertEquals(1, sequence(buffer.poll()));
+        assertNull(buffer.poll());
+    }
+}
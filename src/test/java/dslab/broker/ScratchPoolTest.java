@@ -0,0 +1,64 @@
+package dslab.broker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class ScratchPoolTest {
+
+    @Test
+    void released_scratch_is_reused() {
+        ScratchPool<Object> pool = new ScratchPool<>(Object::new);
+        Object scratch = pool.borrow();
+        pool.release(scratch);
+        assertSame(scratch, pool.borrow());
+    }
+
+    @Test
+    void borrowed_scratch_is_never_shared() {
+        ScratchPool<Object> pool = new ScratchPool<>(Object::new);
+        Object first = pool.borrow();
+        // the slot is empty while borrowed, so a nested borrow gets its own
+        Object second = pool.borrow();
+        assertNotSame(first, second);
+        pool.release(second);
+        pool.release(first);
+    }
+
+    @Test
+    void scratch_held_elsewhere_does_not_force_an_allocation() {
+        AtomicInteger created = new AtomicInteger();
+        ScratchPool<Object> pool = new ScratchPool<>(4, () -> {
+            created.incrementAndGet();
+            return new Object();
+        });
+        Object first = pool.borrow();
+        Object second = pool.borrow();
+        // both are kept, the second one in the next free slot
+        pool.release(second);
+        pool.release(first);
+
+        for (int i = 0; i < 10; i++) {
+            Object outer = pool.borrow();
+            Object nested = pool.borrow();
+            pool.release(nested);
+            pool.release(outer);
+        }
+        assertEquals(2, created.get());
+    }
+
+    @Test
+    void surplus_scratch_is_dropped_once_all_slots_are_taken() {
+        ScratchPool<Object> pool = new ScratchPool<>(1, Object::new);
+        Object first = pool.borrow();
+        Object second = pool.borrow();
+        pool.release(first);
+        pool.release(second);
+        assertSame(first, pool.borrow());
+        assertNotSame(second, pool.borrow());
+    }
+}
@@ -0,0 +1,79 @@
+package dslab.broker;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TimerWheelTest {
+
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final TimerWheel timers = new TimerWheel(TimeUnit.MILLISECONDS.toNanos(1), 64, Thread::new);
+
+    @BeforeEach
+    void start() {
+        timers.start();
+    }
+
+    @AfterEach
+    void shutdown() {
+        timers.shutdown();
+    }
+
+    private static void awaitCollected(WeakReference<?> reference) throws InterruptedException {
+        while (reference.get() != null) {
+            System.gc();
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void weakly_scheduled_message_expires_at_deadline() throws InterruptedException {
+        Message message = Message.withTtl(new byte[16], TimeUnit.MILLISECONDS.toNanos(50), 0);
+        timers.scheduleWeakly(message.deadline(), message, Message::expire);
+        assertNotNull(message.payload());
+
+        while (message.payload() != null)
+            Thread.sleep(10);
+        assertTrue(message.isExpired());
+    }
+
+    @Test
+    @Timeout(value = 5000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void delivered_message_is_not_retained_by_wheel() throws InterruptedException {
+        MessageBuffer buffer = new TtlMessageBuffer(new LinkedMessageBuffer(), HOUR_MILLIS, timers);
+        buffer.put(new Message(new byte[1 << 20]));
+
+        Message delivered = buffer.poll();
+        assertNotNull(delivered);
+        WeakReference<Message> reference = new WeakReference<>(delivered);
+        delivered = null;
+
+        // only the wheel could keep the message alive, its deadline is an hour away
+        awaitCollected(reference);
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    @Timeout(value = 5000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void timeout_of_collected_target_is_cancelled() throws InterruptedException {
+        Message message = new Message(new byte[16]);
+        TimerWheel.Timeout timeout = timers.scheduleWeakly(
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(HOUR_MILLIS), message, Message::expire);
+        WeakReference<Message> reference = new WeakReference<>(message);
+        message = null;
+
+        awaitCollected(reference);
+        while (!timeout.isCancelled())
+            Thread.sleep(10);
+    }
+}
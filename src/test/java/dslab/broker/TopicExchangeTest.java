@@ -0,0 +1,240 @@
+package dslab.broker;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class TopicExchangeTest {
+
+    private static final String[] EDGE_PATTERNS = {
+            "#", "*", "#.#", "*.*", "#.*", "*.#", "a.#", "#.a", "a.#.b", "a.*.b", "#.a.#", "*.a.*", "a.#.#.b",
+            "#.*.#", "a.*.#.*", "a", "a.b", "", "*.", ".*"
+    };
+    private static final String[] EDGE_KEYS = {
+            "", "a", "b", "a.b", "b.a", "a.a", "a.b.b", "a.x.b", "a.x.y.b", "x.a.y", "a.b.a", ".a", "a.", "a..b",
+            ".", "x", "x.y.z.w"
+    };
+
+    /**
+     * Straightforward backtracking reference: {@code *} matches exactly one word, {@code #} zero or more.
+     */
+    private static boolean matches(String pattern, String key) {
+        return matches(pattern.split("\\."), 0, key.split("\\."), 0);
+    }
+
+    private static boolean matches(String[] pattern, int p, String[] key, int k) {
+        if (p == pattern.length)
+            return k == key.length;
+        if (pattern[p].equals("#"))
+            return matches(pattern, p + 1, key, k) || (k < key.length && matches(pattern, p, key, k + 1));
+        return k < key.length && (pattern[p].equals("*") || pattern[p].equals(key[k]))
+                && matches(pattern, p + 1, key, k + 1);
+    }
+
+    private static Message message(String key) {
+        return new Message(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Binds one queue per pattern to a single exchange, publishes every key and compares where it went with the
+     * reference.
+     */
+    private static void assertRoutes(String[] patterns, String[] keys) {
+        TopicExchange exchange = new TopicExchange("topic", 0);
+        List<NamedQueue> queues = new ArrayList<>();
+        for (String pattern : patterns) {
+            NamedQueue queue = new NamedQueue(pattern);
+            exchange.bind(queue, pattern);
+            queues.add(queue);
+        }
+
+        for (String key : keys) {
+            exchange.publish(key, message(key));
+            for (int i = 0; i < patterns.length; i++) {
+                Message routed = queues.get(i).poll();
+                String expected = matches(patterns[i], key) ? key : null;
+                assertEquals(expected, routed == null ? null : new String(routed.payload(), StandardCharsets.UTF_8),
+                        "pattern '" + patterns[i] + "' key '" + key + "'");
+                assertNull(queues.get(i).poll());
+            }
+        }
+    }
+
+    @Test
+    void wildcard_edge_cases_match_reference() {
+        assertRoutes(EDGE_PATTERNS, EDGE_KEYS);
+    }
+
+    @Test
+    void random_patterns_match_reference() {
+        Random random = new Random(42);
+        String[] patternWords = {"a", "b", "*", "#"};
+        String[] keyWords = {"a", "b", "c"};
+
+        for (int round = 0; round < 50; round++) {
+            String[] patterns = new String[20];
+            for (int i = 0; i < patterns.length; i++)
+                patterns[i] = randomKey(random, patternWords, 1 + random.nextInt(5));
+            String[] keys = new String[30];
+            for (int i = 0; i < keys.length; i++)
+                keys[i] = randomKey(random, keyWords, 1 + random.nextInt(6));
+            assertRoutes(patterns, keys);
+        }
+    }
+
+    private static String randomKey(Random random, String[] words, int length) {
+        String[] key = new String[length];
+        for (int i = 0; i < length; i++)
+            key[i] = words[random.nextInt(words.length)];
+        return String.join(".", key);
+    }
+
+    @Test
+    void automaton_and_trie_walk_match_reference() {
+        Random random = new Random(7);
+        String[] patternWords = {"a", "b", "*", "#"};
+        String[] keyWords = {"a", "b", "c", "*", "#"};
+
+        for (int round = 0; round < 50; round++) {
+            Trie trie = new Trie();
+            String[] patterns = new String[20];
+            NamedQueue[] queues = new NamedQueue[patterns.length];
+            for (int i = 0; i < patterns.length; i++) {
+                patterns[i] = randomKey(random, patternWords, 1 + random.nextInt(5));
+                queues[i] = new NamedQueue(patterns[i]);
+                trie.bind(queues[i], patterns[i].split("\\."));
+            }
+            TopicMatcher matcher = TopicMatcher.compile(trie.root);
+
+            for (int k = 0; k < 30; k++) {
+                String key = randomKey(random, keyWords, 1 + random.nextInt(6));
+                List<NamedQueue> expected = new ArrayList<>();
+                for (int i = 0; i < patterns.length; i++) {
+                    if (matches(patterns[i], key))
+                        expected.add(queues[i]);
+                }
+                assertEquals(Set.copyOf(expected), Set.of(matcher.resolve(key.split("\\."))), "key '" + key + "'");
+                assertEquals(Set.copyOf(expected), Set.of(trie.walk(key.split("\\."))), "key '" + key + "'");
+            }
+        }
+    }
+
+    @Test
+    @Timeout(value = 10000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void publish_right_after_bind_is_routed_while_the_automaton_is_rebuilt() {
+        TopicExchange exchange = new TopicExchange("topic", 0);
+        NamedQueue[] queues = new NamedQueue[2000];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new NamedQueue("queue-" + i);
+            exchange.bind(queues[i], "key." + i + ".#");
+            exchange.publish("key." + i, message("key." + i));
+            assertEquals(1, drain(queues[i]), "queue-" + i);
+        }
+    }
+
+    @Test
+    void queue_matched_by_several_patterns_gets_message_once() {
+        TopicExchange exchange = new TopicExchange("topic", 0);
+        NamedQueue queue = new NamedQueue("queue");
+        for (String pattern : Arrays.asList("a.*", "a.#", "#", "#.b", "a.b"))
+            exchange.bind(queue, pattern);
+
+        exchange.publish("a.b", message("a.b"));
+        assertEquals("a.b", new String(queue.poll().payload(), StandardCharsets.UTF_8));
+        assertNull(queue.poll());
+    }
+
+    @Test
+    @Timeout(value = 10000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void concurrent_publishers_route_independently() throws Exception {
+        // without a route cache every publish runs the automaton on pooled scratch arrays
+        TopicExchange exchange = new TopicExchange("topic", 0);
+        NamedQueue[] queues = new NamedQueue[EDGE_PATTERNS.length];
+        for (int i = 0; i < EDGE_PATTERNS.length; i++) {
+            queues[i] = new NamedQueue(EDGE_PATTERNS[i]);
+            exchange.bind(queues[i], EDGE_PATTERNS[i]);
+        }
+
+        int publishers = 64;
+        int rounds = 200;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int p = 0; p < publishers; p++) {
+                executor.submit(() -> {
+                    for (int r = 0; r < rounds; r++) {
+                        for (String key : EDGE_KEYS)
+                            exchange.publish(key, message(key));
+                    }
+                });
+            }
+        }
+
+        for (int i = 0; i < EDGE_PATTERNS.length; i++) {
+            int expected = 0;
+            for (String key : EDGE_KEYS)
+                expected += matches(EDGE_PATTERNS[i], key) ? publishers * rounds : 0;
+            assertEquals(expected, drain(queues[i]), "pattern '" + EDGE_PATTERNS[i] + "'");
+        }
+    }
+
+    @Test
+    void cached_route_follows_bind_and_unbind() {
+        TopicExchange exchange = new TopicExchange("topic", 16);
+        NamedQueue first = new NamedQueue("first");
+        NamedQueue second = new NamedQueue("second");
+        exchange.bind(first, "a.#");
+
+        exchange.publish("a.b", message("a.b"));
+        exchange.publish("a.b", message("a.b"));
+        assertEquals(1, exchange.getRouteCacheMisses());
+        assertEquals(1, exchange.getRouteCacheHits());
+        assertEquals(2, drain(first));
+
+        // the cached route must not hide a new binding
+        exchange.bind(second, "a.*");
+        exchange.publish("a.b", message("a.b"));
+        assertEquals(1, drain(first));
+        assertEquals(1, drain(second));
+
+        // nor keep routing to a queue that was unbound
+        exchange.unbind(first, "a.#");
+        exchange.publish("a.b", message("a.b"));
+        assertEquals(0, drain(first));
+        assertEquals(1, drain(second));
+
+        exchange.unbind(second);
+        exchange.publish("a.b", message("a.b"));
+        assertEquals(0, drain(second));
+        assertEquals(1, exchange.getRouteCacheSize());
+    }
+
+    @Test
+    void route_cache_stays_within_its_size() {
+        TopicExchange exchange = new TopicExchange("topic", 2);
+        NamedQueue queue = new NamedQueue("queue");
+        exchange.bind(queue, "#");
+
+        for (int i = 0; i < 10; i++)
+            exchange.publish("key." + i, message("key." + i));
+        assertEquals(2, exchange.getRouteCacheSize());
+        assertEquals(10, drain(queue));
+    }
+
+    private static int drain(NamedQueue queue) {
+        int count = 0;
+        while (queue.poll() != null)
+            count++;
+        return count;
+    }
+}
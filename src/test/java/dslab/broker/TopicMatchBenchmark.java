@@ -0,0 +1,68 @@
+package dslab.broker;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Publishes random keys to a topic exchange with many bindings, about a fifth of which contain {@code *} or {@code #},
+ * and reports the time per publish: once including the enqueues into linked queues, and once routing only, into
+ * queues that just count. The route cache is off, so every publish runs the matcher.
+ * <p>
+ * Arguments: number of bindings (default 10000), number of queues they are spread over (default 1000).
+ */
+final class TopicMatchBenchmark {
+
+    private static final int KEYS = 20_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int bindings = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int queueCount = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+
+        NamedQueue[] queues = new NamedQueue[queueCount];
+        for (int i = 0; i < queues.length; i++)
+            queues[i] = new NamedQueue("queue-" + i);
+        run("enqueue", bindings, queues);
+
+        BenchmarkRunner.CountingBuffer counted = new BenchmarkRunner.CountingBuffer();
+        for (int i = 0; i < queues.length; i++)
+            queues[i] = new NamedQueue("queue-" + i, counted);
+        run("routing only", bindings, queues);
+    }
+
+    private static void run(String label, int bindings, NamedQueue[] queues) throws InterruptedException {
+        Random random = new Random(42);
+        TopicExchange exchange = new TopicExchange("topic", 0);
+        for (int i = 0; i < bindings; i++)
+            exchange.bind(queues[i % queues.length], randomPattern(random));
+
+        String[] keys = new String[KEYS];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = randomKey(random);
+        Message message = new Message("payload".getBytes(StandardCharsets.UTF_8));
+
+        // the automaton is compiled in the background after the last bind
+        Thread.sleep(1000);
+        double nanos = BenchmarkRunner.nanosPerOp(5, 10, keys.length, i -> exchange.publish(keys[i], message),
+                () -> BenchmarkRunner.drain(queues));
+        System.out.printf("%s, %d bindings, %d queues: %.2f us/publish%n", label, bindings, queues.length,
+                nanos / 1000);
+    }
+
+    static String randomPattern(Random random) {
+        String[] words = randomWords(random);
+        if (random.nextInt(5) == 0)
+            words[random.nextInt(words.length)] = random.nextBoolean() ? "*" : "#";
+        return String.join(".", words);
+    }
+
+    static String randomKey(Random random) {
+        return String.join(".", randomWords(random));
+    }
+
+    private static String[] randomWords(Random random) {
+        String[] words = new String[2 + random.nextInt(3)];
+        for (int i = 0; i < words.length; i++)
+            words[i] = "w" + random.nextInt(10);
+        return words;
+    }
+}
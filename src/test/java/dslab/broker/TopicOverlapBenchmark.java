@@ -0,0 +1,52 @@
+package dslab.broker;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binds every queue with a growing number of distinct patterns that all match the published key, e.g.
+ * {@code w0.w1.w2}, {@code *.w1.w2} and {@code w0.w1.w2.#}, and reports the time per publish and the number of
+ * enqueues it caused. Each queue gets the message once however many of its patterns match. The route cache is off.
+ * <p>
+ * Arguments: number of queues (default 100).
+ */
+final class TopicOverlapBenchmark {
+
+    private static final String[] KEY = {"w0", "w1", "w2", "w3", "w4"};
+    private static final int[] OVERLAPS = {1, 2, 4, 8, 16, 32, 64};
+    private static final int PUBLISHES = 20_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int queueCount = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        String key = String.join(".", KEY);
+        Message message = new Message("payload".getBytes(StandardCharsets.UTF_8));
+
+        for (int overlap : OVERLAPS) {
+            TopicExchange exchange = new TopicExchange("topic", 0);
+            NamedQueue[] queues = new NamedQueue[queueCount];
+            for (int i = 0; i < queues.length; i++) {
+                queues[i] = new NamedQueue("queue-" + i);
+                for (int pattern = 0; pattern < overlap; pattern++)
+                    exchange.bind(queues[i], pattern(pattern));
+            }
+
+            // the automaton is compiled in the background after the last bind
+            Thread.sleep(500);
+            int[] enqueued = new int[1];
+            double nanos = BenchmarkRunner.nanosPerOp(5, 10, PUBLISHES, i -> exchange.publish(key, message),
+                    () -> enqueued[0] = BenchmarkRunner.drain(queues));
+            System.out.printf("%d queues x %2d matching patterns: %.2f us/publish, %.0f enqueues/publish%n",
+                    queueCount, overlap, nanos / 1000, (double) enqueued[0] / PUBLISHES);
+        }
+    }
+
+    /**
+     * The n-th pattern matching the key: every word of the key or {@code *} in its place, picked by the bits of n, and
+     * a trailing {@code #} from the 32nd on.
+     */
+    private static String pattern(int n) {
+        String[] words = new String[KEY.length];
+        for (int i = 0; i < KEY.length; i++)
+            words[i] = (n & 1 << i) != 0 ? "*" : KEY[i];
+        return String.join(".", words) + (n >= 1 << KEY.length ? ".#" : "");
+    }
+}
@@ -0,0 +1,134 @@
+package dslab.broker;
+
+import dslab.config.BrokerConfig;
+import dslab.config.Durability;
+import dslab.config.ThreadingMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TopologyStoreTest {
+
+    private Path directory;
+
+    @BeforeEach
+    void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("topology");
+    }
+
+    @AfterEach
+    void deleteDirectory() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(path);
+        }
+    }
+
+    private static QueueOptions options(String... arguments) {
+        return QueueOptions.parse(arguments, 0);
+    }
+
+    @Test
+    void declarations_are_replayed_after_restart() throws IOException {
+        TopologyStore store = TopologyStore.open(directory, false, new Recorder());
+        store.exchangeDeclared("topic", "logs");
+        store.exchangeDeclared("fanout", "news");
+        store.queueDeclared("errors", options("max-length=10"));
+        store.queueDeclared("all", options());
+        store.queueDeclared("gone", options());
+        store.queueBound("logs", "errors", "*.error");
+        store.queueBound("logs", "all", "#");
+        store.queueBound("news", "all", "ignored");
+        store.queueBound("logs", "gone", "#");
+        store.queueUnbound("logs", "all", "#");
+        store.queueDeleted("gone");
+
+        // not closed, as after a crash only the snapshot written on open and the journal are left
+        Recorder replayed = new Recorder();
+        TopologyStore.open(directory, false, replayed).close();
+        assertEquals(List.of("topic logs", "fanout news", "errors [max-length=10]", "all []",
+                "logs errors *.error", "news all ignored"), replayed.loaded);
+
+        // closing compacted everything into the snapshot
+        Recorder restored = new Recorder();
+        TopologyStore.open(directory, false, restored).close();
+        assertEquals(replayed.loaded, restored.loaded);
+        assertEquals(0, Files.size(directory.resolve("topology.journal")));
+    }
+
+    @Test
+    void journal_is_compacted_once_it_exceeds_its_limit() throws IOException {
+        TopologyStore store = TopologyStore.open(directory, false, 1024, new Recorder());
+        for (int i = 0; i < 500; i++) {
+            store.queueDeclared("queue-" + i, options());
+            assertTrue(Files.size(directory.resolve("topology.journal")) < 1024);
+        }
+
+        Recorder replayed = new Recorder();
+        TopologyStore.open(directory, false, replayed);
+        assertEquals(500, replayed.loaded.size());
+        assertEquals("queue-499 []", replayed.loaded.get(499));
+    }
+
+    @Test
+    void damaged_snapshot_fails_open_and_is_kept() throws IOException {
+        TopologyStore store = TopologyStore.open(directory, false, new Recorder());
+        store.exchangeDeclared("direct", "orders");
+        store.close();
+
+        Path snapshot = directory.resolve("topology.snapshot");
+        byte[] damaged = Files.readAllBytes(snapshot);
+        damaged[damaged.length / 2] ^= 1;
+        Files.write(snapshot, damaged);
+
+        assertThrows(IOException.class, () -> TopologyStore.open(directory, false, new Recorder()));
+        assertArrayEquals(damaged, Files.readAllBytes(snapshot));
+    }
+
+    @Test
+    void broker_does_not_start_with_damaged_topology() throws IOException {
+        Path topology = directory.resolve("broker-topology").resolve("topology");
+        Files.createDirectories(topology);
+        Files.write(topology.resolve("topology.snapshot"), new byte[64]);
+        BrokerConfig config = new BrokerConfig("broker-topology", "127.0.0.1", 20099, "broker-topology.at",
+                "127.0.0.1", 20005, BrokerConfig.TRANSPORT_BLOCKING, 1, ThreadingMode.PLATFORM,
+                BrokerConfig.QUEUE_LINKED, 65536, "blocking", 128, 0, directory.toString(), Durability.OS_BUFFERED, 0,
+                1024 * 1024, true);
+
+        assertThrows(IllegalStateException.class, () -> new Broker(config));
+        assertArrayEquals(new byte[64], Files.readAllBytes(topology.resolve("topology.snapshot")));
+    }
+
+    private static final class Recorder implements TopologyStore.Loader {
+
+        private final List<String> loaded = new ArrayList<>();
+
+        @Override
+        public void exchange(String type, String name) {
+            loaded.add(type + " " + name);
+        }
+
+        @Override
+        public void queue(String name, QueueOptions options) {
+            loaded.add(name + " " + options.toArguments());
+        }
+
+        @Override
+        public void binding(String exchange, String queue, String key) {
+            loaded.add(exchange + " " + queue + " " + key);
+        }
+    }
+}
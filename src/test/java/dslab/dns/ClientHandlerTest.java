@@ -0,0 +1,60 @@
+package dslab.dns;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ClientHandlerTest {
+
+    private ServerSocket serverSocket;
+    private Socket client;
+    private Socket accepted;
+    private Thread handler;
+
+    @BeforeEach
+    void connect() throws IOException {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        client = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+        accepted = serverSocket.accept();
+        handler = new Thread(new ClientHandler(accepted));
+        handler.start();
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream(),
+                StandardCharsets.UTF_8));
+        assertEquals("ok SDP", reader.readLine());
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        client.close();
+        accepted.close();
+        serverSocket.close();
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void handler_returns_once_the_client_disconnected() throws InterruptedException, IOException {
+        client.close();
+        handler.join();
+    }
+
+    @Test
+    @Timeout(value = 3000, unit = TimeUnit.MILLISECONDS, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void handler_returns_once_the_client_half_closed_its_output() throws InterruptedException, IOException {
+        // the client is done writing but still reads, end of stream all the same
+        client.shutdownOutput();
+        handler.join();
+    }
+}